@@ -2,6 +2,7 @@ package com.kristina.ecom.cart.api;
 
 import java.util.List;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -9,10 +10,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import com.kristina.ecom.cart.domain.ShoppingCart;
+import com.kristina.ecom.cart.service.CartStateException;
 import com.kristina.ecom.cart.service.ShoppingCartService;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.pms.dao.InsufficientStockException;
 
 @RestController
 @RequestMapping ("ecom/shoppingcart")
@@ -23,9 +30,11 @@ public class ShoppingCartAPI {
     service = new ShoppingCartService();
   }
 
+  // keyset paged, call again with after=<id of the last cart> for the next page
   @GetMapping(value="/getall", produces="application/json")
-  public List<ShoppingCart> getAll() {
-    return service.readAll();
+  public List<ShoppingCart> getAll(@RequestParam(required=false) String after,
+                                   @RequestParam(defaultValue="100") int limit) {
+    return service.readPage(after, limit);
   }
 
   @GetMapping(value="/get/{id}", produces="application/json")
@@ -54,6 +63,23 @@ public class ShoppingCartAPI {
     return 1;
   }
 
+  // the orders created for the cart. 404 for an unknown cart, 409 when it can't be checked out
+  // as it is or a product is short on stock, 500 when the checkout itself failed
+  @PostMapping(value="/checkout/{id}", produces="application/json")
+  public List<Order> checkout(@PathVariable String id) {
+    ShoppingCart cart = service.readId(id);
+    if (cart == null)
+      throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No shopping cart with id: " + id);
+    try {
+      return service.checkOut(cart);
+    } catch (CartStateException | InsufficientStockException ex) {
+      throw new ResponseStatusException(HttpStatus.CONFLICT, ex.getMessage(), ex);
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+      throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Checkout failed", ex);
+    }
+  }
+
   @PutMapping(value="/cancel", produces="application/json", consumes="application/json")
   public int cancel(@RequestBody ShoppingCart shoppingCart) {
     service.cancel(shoppingCart);
@@ -2,8 +2,13 @@ package com.kristina.ecom.cart.dao;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Updates.set;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
@@ -11,7 +16,10 @@ import org.bson.types.ObjectId;
 import com.mongodb.MongoException;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertOneResult;
 import com.kristina.ecom.cart.domain.ShoppingCart;
@@ -29,7 +37,7 @@ public class ShoppingCartDAOMongo  implements DAO<String, ShoppingCart> {
 
   public ShoppingCartDAOMongo () {
     this.dataSourceFactory = MongoDataSourceFactory.getInstance();
-    this.collection = dataSourceFactory.getDatabase().getCollection("shoppingcart");
+    this.collection = dataSourceFactory.getCollection("shoppingcart");
   }
 
   @Override
@@ -63,6 +71,28 @@ public class ShoppingCartDAOMongo  implements DAO<String, ShoppingCart> {
     return carts;
   }
 
+  // paged by cart id (_id), not by user_id like read()
+  @Override
+  public List<ShoppingCart> readPage(String after, int limit) throws DAOException {
+    List<ShoppingCart> carts = new ArrayList<>();
+    // no cart comes after an id that isn't one
+    if (after != null && !ObjectId.isValid(after))
+      return carts;
+    Bson query = after == null ? new Document() : gt("_id", new ObjectId(after));
+    try {
+      for (Document document : collection.find(query).sort(ascending("_id")).limit(limit))
+        carts.add(toShoppingCart(document));
+    } catch (MongoException ex) {
+      throw new DAOException("❌ Coudn't read the shopping carts", ex);
+    }
+    return carts;
+  }
+
+  @Override
+  public Stream<ShoppingCart> stream() throws DAOException {
+    return UtilDAOMongo.stream(collection.find(), this::toShoppingCart);
+  }
+
   @Override // read only the artive one 
   public ShoppingCart read(String user_id) throws DAOException {
       Document shoppingDocument = collection.find(and(
@@ -83,7 +113,7 @@ public class ShoppingCartDAOMongo  implements DAO<String, ShoppingCart> {
   }
 
   public ShoppingCart readId(String id) throws DAOException {
-    if (id == null) {
+    if (id == null || !ObjectId.isValid(id)) {
       return null;
     }
     Bson query = eq("_id", new ObjectId(id));
@@ -97,18 +127,46 @@ public class ShoppingCartDAOMongo  implements DAO<String, ShoppingCart> {
     return null;
   }
 
+  // only an ACTIVE cart is replaced, a stale copy must not undo a checkout (COMPLETING and on).
+  // 0 when the cart is gone or no longer active
   @Override
   public int update(ShoppingCart shoppingCart) throws DAOException {
-    Bson query = eq("_id", new ObjectId(shoppingCart.getId()));
     ReplaceOptions replaceOptions = new ReplaceOptions().upsert(false);
     try {
-    collection.replaceOne(query, toShoppingDocument(shoppingCart), replaceOptions);
-    return 1;
+      return (int) collection.replaceOne(active(shoppingCart.getId()), toShoppingDocument(shoppingCart), replaceOptions).getMatchedCount();
     } catch (MongoException ex) {
       throw new DAOException("Failed to update the Shopping Cart", ex);
     }
   }
 
+  // ACTIVE -> COMPLETING, 1 for the one checkout that got the cart, 0 for any other
+  public int begin(String id) throws DAOException {
+    return status(id, Status.ACTIVE, Status.COMPLETING);
+  }
+
+  // COMPLETING -> COMPLETED, running it again (an outbox retry) changes nothing
+  public int complete(String id) throws DAOException {
+    return status(id, Status.COMPLETING, Status.COMPLETED);
+  }
+
+  // COMPLETING -> ACTIVE, the checkout failed before any order was created
+  public int reopen(String id) throws DAOException {
+    return status(id, Status.COMPLETING, Status.ACTIVE);
+  }
+
+  private static Bson active(String id) {
+    return and(eq("_id", new ObjectId(id)), eq("status", Status.ACTIVE.toString()));
+  }
+
+  private int status(String id, Status from, Status to) throws DAOException {
+    try {
+      return (int) collection.updateOne(and(eq("_id", new ObjectId(id)), eq("status", from.toString())),
+        set("status", to.toString())).getModifiedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Failed to update the Shopping Cart status", ex);
+    }
+  }
+
   @Override // delete the entire shopping cart
   public int delete(String id) throws DAOException {
     Document shopDocument = collection.find(eq("_id", new ObjectId(id))).first();
@@ -124,6 +182,66 @@ public class ShoppingCartDAOMongo  implements DAO<String, ShoppingCart> {
     return 0;
   }
 
+  @Override
+  public List<ShoppingCart> createAll(List<ShoppingCart> shoppingCarts) throws DAOException {
+    if (shoppingCarts.isEmpty())
+      return shoppingCarts;
+
+    try {
+      List<Document> documents = new ArrayList<>();
+      for (ShoppingCart shoppingCart : shoppingCarts)
+        documents.add(toShoppingDocument(shoppingCart));
+      InsertManyResult result = collection.insertMany(documents);
+      result.getInsertedIds().forEach((i, id) -> shoppingCarts.get(i).setId(id.asObjectId().getValue().toHexString()));
+      return shoppingCarts;
+    } catch (MongoException ex) {
+      throw new DAOException("❌ Coudn't create the shopping carts", ex);
+    }
+  }
+
+  @Override // the active carts of the given users
+  public List<ShoppingCart> readMany(List<String> user_ids) throws DAOException {
+    List<ShoppingCart> carts = new ArrayList<>();
+    try {
+      for (Document document : collection.find(and(in("user_id", user_ids), eq("status", Status.ACTIVE.toString()))))
+        carts.add(toShoppingCart(document));
+    } catch (MongoException ex) {
+      throw new DAOException("❌ Coudn't read the shopping carts", ex);
+    }
+    return carts;
+  }
+
+  @Override
+  public int updateAll(List<ShoppingCart> shoppingCarts) throws DAOException {
+    if (shoppingCarts.isEmpty())
+      return 0;
+
+    List<WriteModel<Document>> updates = new ArrayList<>();
+    ReplaceOptions replaceOptions = new ReplaceOptions().upsert(false);
+    for (ShoppingCart shoppingCart : shoppingCarts)
+      updates.add(new ReplaceOneModel<>(active(shoppingCart.getId()), toShoppingDocument(shoppingCart), replaceOptions));
+
+    try {
+      return collection.bulkWrite(updates).getMatchedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Failed to update the Shopping Carts", ex);
+    }
+  }
+
+  @Override
+  public int deleteAll(List<String> ids) throws DAOException {
+    List<ObjectId> objectIds = new ArrayList<>();
+    for (String id : ids)
+      objectIds.add(new ObjectId(id));
+
+    try {
+      DeleteResult result = collection.deleteMany(in("_id", objectIds));
+      return (int) result.getDeletedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("❌ Coudn't delete the shopping carts", ex);
+    }
+  }
+
   // from object to document
     private Document toShoppingDocument(ShoppingCart shoppingCart) throws DAOException {
     Document document = new Document();
@@ -1,9 +1,11 @@
 package com.kristina.ecom.cart.domain;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
 import com.kristina.ecom.pms.domain.Computer;
+import com.kristina.ecom.pms.domain.ComputerBase;
 
 public class ShoppingCart {
   private String id;
@@ -27,6 +29,16 @@ public class ShoppingCart {
     this.computers = computers;
   }
 
+  // a copy that shares nothing mutable with cart
+  public ShoppingCart(ShoppingCart cart) {
+    this(cart.id, cart.user_id, cart.updated_at == null ? null : new Date(cart.updated_at.getTime()), cart.status, null);
+    if (cart.computers != null) {
+      computers = new ArrayList<>();
+      for (Computer computer : cart.computers)
+        computers.add(new ComputerBase(computer));
+    }
+  }
+
   public String getId() {
     return id;
   }
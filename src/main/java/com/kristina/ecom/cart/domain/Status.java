@@ -3,6 +3,7 @@ package com.kristina.ecom.cart.domain;
 public enum Status {
   NEW,
   ACTIVE,
+  COMPLETING,
   CANCELED,
   COMPLETED
 }
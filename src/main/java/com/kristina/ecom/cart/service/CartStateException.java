@@ -0,0 +1,10 @@
+package com.kristina.ecom.cart.service;
+
+import com.kristina.ecom.dao.DAOException;
+
+// the cart can't be checked out as it is: empty, canceled, completed or being checked out
+public class CartStateException extends DAOException {
+  public CartStateException(String errMsg) {
+    super(errMsg, new Exception());
+  }
+}
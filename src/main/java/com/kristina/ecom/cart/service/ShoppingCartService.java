@@ -1,6 +1,8 @@
 package com.kristina.ecom.cart.service;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import com.kristina.ecom.cart.dao.ShoppingCartDAOMongo;
 import com.kristina.ecom.cart.domain.ShoppingCart;
@@ -8,12 +10,21 @@ import com.kristina.ecom.cart.domain.Status;
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.DAOFactory;
+import com.kristina.ecom.oms.dao.Outbox;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.service.OrderService;
+import com.kristina.ecom.pms.domain.Computer;
 
 public class ShoppingCartService {
+  // upper bound for a page requested through the web layer
+  public static final int MAX_PAGE = 500;
+
   private DAO<String, ShoppingCart> dao;
+  private OrderService orderService;
 
   public ShoppingCartService() {
     dao = DAOFactory.getInstance().create(DAO.Type.SHOPPING_CART_DAO);
+    orderService = new OrderService();
   }
 
   public int create(ShoppingCart cart) {
@@ -36,10 +47,20 @@ public class ShoppingCartService {
     return null;
   }
 
+  // one keyset page by cart id, pass the id of the last cart of the previous page (or null)
+  public List<ShoppingCart> readPage(String after, int limit) {
+    try {
+      return dao.readPage(after, Math.max(1, Math.min(limit, MAX_PAGE)));
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+    return null;
+  }
+
   // 
   public ShoppingCart readId(String id) {
     try {
-      ShoppingCartDAOMongo shoppingCartDao = (ShoppingCartDAOMongo) dao;
+      ShoppingCartDAOMongo shoppingCartDao = dao.unwrap(ShoppingCartDAOMongo.class);
       ShoppingCart cart = shoppingCartDao.readId(id);
       return cart;
     } catch (DAOException ex) {
@@ -49,9 +70,9 @@ public class ShoppingCartService {
   }
   
   public ShoppingCart read(Status status) {
-    try {
-      List<ShoppingCart> carts = dao.readAll();
-      return carts.stream()
+    // stops reading the cursor at the first match
+    try (Stream<ShoppingCart> carts = dao.stream()) {
+      return carts
           .filter(cart -> cart.getStatus() == status)
           .findFirst()
           .orElse(null);
@@ -101,6 +122,41 @@ public class ShoppingCartService {
     return 0;
   }
 
+  public List<Order> checkOut(String id) throws DAOException {
+    ShoppingCart cart = readId(id);
+    if (cart == null)
+      throw new DAOException("No shopping cart with id: " + id, new Exception());
+    return checkOut(cart);
+  }
+
+  // one order per computer, all created in a single transaction. the cart is moved from ACTIVE
+  // to COMPLETING in the db first, so of two checkouts of the same cart only one gets that far;
+  // the outbox completes it after the commit, a failed checkout makes it ACTIVE again
+  public List<Order> checkOut(ShoppingCart shoppingCart) throws DAOException {
+    if (shoppingCart.getStatus() != Status.ACTIVE || shoppingCart.getComputers().isEmpty())
+      throw new CartStateException("Can't check out. Cart is either empty, canceled or completed");
+
+    ShoppingCartDAOMongo carts = dao.unwrap(ShoppingCartDAOMongo.class);
+    if (carts.begin(shoppingCart.getId()) == 0)
+      throw new CartStateException("Can't check out. Cart is already being checked out");
+    // the cached copy still says ACTIVE
+    DAOFactory.getInstance().evict(DAO.Type.SHOPPING_CART_DAO, shoppingCart.getUserId());
+
+    List<Order> orders = new ArrayList<>();
+    for (Computer computer : shoppingCart.getComputers())
+      orders.add(new Order(computer));
+    try {
+      orderService.checkout(orders, List.of(Outbox.Event.cartCompleted(shoppingCart.getId(), shoppingCart.getUserId())));
+    } catch (DAOException | RuntimeException ex) {
+      carts.reopen(shoppingCart.getId());
+      DAOFactory.getInstance().evict(DAO.Type.SHOPPING_CART_DAO, shoppingCart.getUserId());
+      throw ex;
+    }
+
+    shoppingCart.setStatus(Status.COMPLETED);
+    return orders;
+  }
+
   public void cancel(ShoppingCart shoppingCart) {
     shoppingCart.setStatus(Status.CANCELED);
     try { 
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Component;
 
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
-import com.kristina.ecom.dao.JPAFactory;
+import com.kristina.ecom.dao.DAOFactory;
 import com.kristina.ecom.cms.domain.Address;
 
 @Component
@@ -15,7 +15,7 @@ public class AddressService {
   private DAO<Long, Address> dao;
 
   public AddressService() {
-    dao = JPAFactory.getInstance().create(DAO.Type.ADDRESS_DAO);
+    dao = DAOFactory.getInstance().create(DAO.Type.ADDRESS_DAO);
   }
 
   public int create(Address address) {
@@ -7,7 +7,7 @@ import org.springframework.stereotype.Component;
 
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
-import com.kristina.ecom.dao.JPAFactory;
+import com.kristina.ecom.dao.DAOFactory;
 import com.kristina.ecom.cms.domain.Customer;
 
 @Component
@@ -15,7 +15,7 @@ public class CustomerService {
   private DAO<Long, Customer> dao;
 
   public CustomerService() {
-    dao = JPAFactory.getInstance().create(DAO.Type.CUSTOMER_DAO);
+    dao = DAOFactory.getInstance().create(DAO.Type.CUSTOMER_DAO);
   }
 
   public int create(Customer customer) {
@@ -9,24 +9,21 @@ import com.kristina.ecom.cart.domain.ShoppingCart;
 import com.kristina.ecom.cart.domain.Status;
 import com.kristina.ecom.cart.service.ShoppingCartService;
 import com.kristina.ecom.dao.DAOException;
-import com.kristina.ecom.oms.domain.Order;
 import com.kristina.ecom.oms.domain.SortByOrderID;
 import com.kristina.ecom.oms.domain.SortByPrice;
 import com.kristina.ecom.oms.domain.SortStrategy;
-import com.kristina.ecom.oms.service.OrderService;
+import com.kristina.ecom.pms.domain.CatalogItem;
 import com.kristina.ecom.pms.domain.Computer;
-import com.kristina.ecom.pms.domain.ComputerBase;
 import com.kristina.ecom.pms.domain.Product;
+import com.kristina.ecom.pms.service.CatalogService;
 import com.kristina.ecom.pms.service.ProductService;
 
 public class CartManager {
   private Scanner sc;
   private ShoppingCart shoppingCart;
-  private SortStrategy strategy, sortByOrderIDStrategy, sortByPriceStrategy;
+  private SortStrategy<?> strategy, sortByOrderIDStrategy, sortByPriceStrategy;
   private ShoppingCartService shopService = new ShoppingCartService();
   private Computer computer;
-  private Computer computerStock;
-  private ProductService productService;
 
 
 
@@ -35,8 +32,6 @@ public class CartManager {
     this.shoppingCart = shoppingCart;
     sortByOrderIDStrategy = new SortByOrderID();
     sortByPriceStrategy = new SortByPrice();
-    computerStock = new ComputerBase();
-    productService = new ProductService();
   }
 
   public void admin() {
@@ -147,34 +142,16 @@ public class CartManager {
   }
 
   public void checkOut() {
-    if (shoppingCart.getStatus() == Status.CANCELED || shoppingCart.getComputers().isEmpty() == true) {
-      System.out.println("❌ Can't check out. Cart is either empty or canceled");
-    }
-
-    boolean outOfStock = false;
-    OrderService service = new OrderService();
-
-    List<Computer> computers = shoppingCart.getComputers();
-    for (Computer computer : computers) {
-      Order order = new Order(computer);
-      try {
-      service.create(order);
-      } catch (DAOException ex) {
-        System.out.println("❌ " + ex.getMessage());
-        outOfStock = true;
-      } 
+    try {
+      // every computer of the cart becomes an order, all or nothing
+      shopService.checkOut(shoppingCart);
+    } catch (DAOException ex) {
+      System.out.println("❌ " + ex.getMessage());
+      return;
     }
 
-    if (!outOfStock) {
-
-      computerStock.getBase().setQuantity(computerStock.getBase().getQuantity() - 1);
-      productService.update(computerStock.getBase()); // update the stock
-
-      shoppingCart.setStatus(Status.COMPLETED);
-      shopService.update(shoppingCart);
-      shoppingCart.getComputers().clear();
-      shoppingCart.setStatus(Status.NEW);
-    }
+    shoppingCart.getComputers().clear();
+    shoppingCart.setStatus(Status.NEW);
   }
   
   public void update() {
@@ -256,6 +233,7 @@ public class CartManager {
     System.out.println("Choose a Product to be deleted");
     int c = sc.nextInt();
     products.remove(c -1);
+    changed(products);
   }
 
   public void addProductToCart() {
@@ -263,22 +241,20 @@ public class CartManager {
     ProductService productService = new ProductService();
     List<Product> products = productService.getAll();
     int productIndex = selectProduct(products);
-    int productId = products.get(productIndex).getId();
-    Product productFromStock = productService.get(productId);
-    Product productInCart = null;
+    Product selected = products.get(productIndex);
+    // the shared catalog entry, the cart only keeps its own line with the quantity
+    CatalogItem item = CatalogService.getInstance().get().item(selected.getId());
+    if (item == null)
+      item = CatalogItem.of(selected);
 
     System.out.println("Type Prouct Quantity: ");
     int c = sc.nextInt();
+    Product productInCart = item.line(c);
 
-    try {
-      productInCart = (Product) productFromStock.clone();
-      productInCart.setQuantity(c);
-    } catch (CloneNotSupportedException ex) {
-        ex.printStackTrace();
-      };
-    
-    if (productInCart != null) {
-      computer.getComponents().add(productInCart);
+    if (c > 0) {
+      List<Product> components = computer.getComponents();
+      components.add(productInCart);
+      changed(components);
       System.out.println("✅ Product added successfully!");
     } else {
       System.out.println("❌ Product was not added!");
@@ -290,7 +266,8 @@ public class CartManager {
     int productId = selectProduct(products);
     
     if (products.isEmpty() == false) {
-      products.remove(productId - 1);
+      products.remove(productId);
+      changed(products);
       System.out.println("✅ Product removed successfully!");
     } else {
       System.out.println("❌ Product was not removed!");
@@ -323,10 +300,17 @@ public class CartManager {
     // TbC: handle out of stock situation
     int newQuantity =  sc.nextInt();
 
+    List<Product> components = computer.getComponents();
     if (newQuantity == 0) 
-      computer.getComponents().remove(productIndex);
+      components.remove(productIndex);
     else
-      computer.getComponents().get(productIndex).setQuantity(newQuantity);
+      components.get(productIndex).setQuantity(newQuantity);
+    changed(components);
+  }
 
+  // getComponents() may be a copy (ComputerBuild), so the edited list is always set back
+  private void changed(List<Product> components) {
+    computer.setComponents(components);
+    computer.update();
   }
 }
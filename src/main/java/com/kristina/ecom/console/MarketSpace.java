@@ -5,10 +5,11 @@ import java.util.Scanner;
 import com.kristina.ecom.cart.domain.ShoppingCart;
 import com.kristina.ecom.cart.domain.Status;
 import com.kristina.ecom.cart.service.ShoppingCartService;
-import com.kristina.ecom.pms.domain.Component;
-import com.kristina.ecom.pms.domain.Computer;
-import com.kristina.ecom.pms.domain.ComputerBase;
+import com.kristina.ecom.pms.domain.Catalog;
+import com.kristina.ecom.pms.domain.CatalogItem;
+import com.kristina.ecom.pms.domain.ComputerBuild;
 import com.kristina.ecom.pms.domain.Product;
+import com.kristina.ecom.pms.service.CatalogService;
 import com.kristina.ecom.pms.service.ProductService;
 
 import java.util.Map;
@@ -20,7 +21,8 @@ import org.bson.types.ObjectId;
 
 public class MarketSpace {
   private static  MarketSpace instance = new MarketSpace();
-  private Map<Integer, Product> products;
+  private Map<Integer, CatalogItem> products;
+  private Map<Integer, Integer> stock; // what is left while the build grows
   private ShoppingCart shoppingCart;
   private ShoppingCartService shopService;
   private ProductService productService;
@@ -28,6 +30,7 @@ public class MarketSpace {
 
   private MarketSpace() {
     products = new HashMap<>();
+    stock = new HashMap<>();
     shopService = new ShoppingCartService();
     productService = new ProductService();
     this.shoppingCart = shopService.read("98765"); //gets only ACTIVE
@@ -40,13 +43,18 @@ public class MarketSpace {
   }
 
   public void buy() {
-    new ProductService().getAll().forEach((product) -> products.put(product.getId(), product));
+    // the shared catalog entries, the stock is fresh from the db
+    Catalog catalog = CatalogService.getInstance().get();
+    for (Product product : new ProductService().getAll()) {
+      CatalogItem item = catalog.item(product.getId());
+      products.put(product.getId(), item != null ? item : CatalogItem.of(product));
+      stock.put(product.getId(), product.getQuantity());
+    }
 
     // Computer computerStock = new ComputerBase(); // this reads from db, so it has quantity from stock
     // System.out.println("🍀  Check computerStock: " + computerStock.getBase().getQuantity());
 
-    Computer computerOrder= new ComputerBase();
-    computerOrder.getBase().setQuantity(1);
+    ComputerBuild computerOrder = new ComputerBuild();
     System.out.println("🍀  Check computerOrder: " + computerOrder.getBase().getQuantity());
 
 
@@ -69,22 +77,12 @@ public class MarketSpace {
         break;
 
       if  (products.keySet().contains(c)) { // products.containsKey(c) // more optimal
-        Product product = products.get(c);
-
-        if (product.getQuantity() == 0) {
+        if (stock.get(c) == 0) {
           System.out.println("Out of stock. Select another product.");
 
         } else {
-          Product p = new Product();
-          try {
-            p = (Product) product.clone();
-            p.setQuantity(1);
-          } catch (CloneNotSupportedException ex) {
-            ex.printStackTrace();
-          } 
-          
-          computerOrder = new Component(computerOrder, p); // decorator wrapping the computer
-          product.setQuantity(product.getQuantity() -1);
+          computerOrder.add(products.get(c), 1); // one flat build, no decorator chain
+          stock.merge(c, -1, Integer::sum);
         }
       } else {
         System.out.println("Invalid choice. Please try again.");
@@ -113,7 +111,7 @@ public class MarketSpace {
   }
 
   private void menu() {
-    products.forEach((k,v) -> System.out.println(k + ":" + v ));
+    products.forEach((k,v) -> System.out.printf("%d: %s $%.2f (%d in stock)%n", k, v.name(), v.price(), stock.get(k)));
     System.out.println(-1 + ": " + "Cancel");
     System.out.println(0 + ": " + "Done");
   }
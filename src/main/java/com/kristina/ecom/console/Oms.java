@@ -6,8 +6,11 @@ import java.util.List;
 import java.util.Scanner;
 
 import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.SortByPrice;
 import com.kristina.ecom.oms.service.OrderService;
+import com.kristina.ecom.pms.domain.CatalogItem;
 import com.kristina.ecom.pms.domain.Product;
+import com.kristina.ecom.pms.service.CatalogService;
 import com.kristina.ecom.pms.service.ProductService;
 
 public class Oms {
@@ -45,6 +48,12 @@ public class Oms {
           cancel();
           break;
         case 6:
+          top();
+          break;
+        case 7:
+          range();
+          break;
+        case 8:
           return;
         default:
           System.out.println("Invalid choice. Please try again.");
@@ -59,7 +68,9 @@ public class Oms {
       "3: Read",
       "4: Update",
       "5: Cancel",
-      "6: Return to main menu"
+      "6: Top orders by total",
+      "7: Orders in a price range",
+      "8: Return to main menu"
     };
     
     System.out.println("\n*** Order Management System ***");
@@ -80,7 +91,21 @@ public class Oms {
   }
 
   public void all() {
-    Arrays.stream(service.getAll().toArray()).forEach(System.out::println);
+    service.forEach(System.out::println);
+  }
+
+  public void top() {
+    System.out.print("How many orders: ");
+    int k = sc.nextInt();
+    service.top(new SortByPrice(), k).forEach(System.out::println);
+  }
+
+  public void range() {
+    System.out.print("Lowest total: ");
+    double min = sc.nextDouble();
+    System.out.print("Highest total: ");
+    double max = sc.nextDouble();
+    service.range(new SortByPrice(), min, max, OrderService.MAX_PAGE).forEach(System.out::println);
   }
 
   public void read() {
@@ -115,19 +140,16 @@ public class Oms {
 
 
     Product selectedProduct = productsInStock.get(productIndex);
-    Product productInOrder = null;
-    try { 
-      productInOrder = (Product) selectedProduct.clone(); 
-    } catch (CloneNotSupportedException ex) {
-      ex.printStackTrace();
-    }
+    CatalogItem item = CatalogService.getInstance().get().item(selectedProduct.getId());
+    if (item == null)
+      item = CatalogItem.of(selectedProduct);
 
     System.out.println("Enter the quantity:");
     int quantity = sc.nextInt();
-    productInOrder.setQuantity(quantity);
-    
+
     List<Product> orderProducts = order.getProducts();
-    orderProducts.add(productInOrder);
+    orderProducts.add(item.line(quantity));
+    order.setProducts(orderProducts);
   }
 
   private int selectProduct(List <Product> products) {
@@ -161,7 +183,7 @@ public class Oms {
   public void update() {
     System.out.println("*** Select an order to update ***");
     all();
-    Order order = service.get(String.valueOf(sc.nextInt()));
+    Order order = service.get(sc.next());
     order.setDate(LocalDateTime.now());
     boolean isDirty = false;
     boolean updating = true;
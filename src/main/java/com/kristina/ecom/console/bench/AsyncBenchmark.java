@@ -0,0 +1,66 @@
+package com.kristina.ecom.console.bench;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.kristina.ecom.dao.AsyncDAO;
+import com.kristina.ecom.dao.AsyncDAOAdapter;
+import com.kristina.ecom.dao.DAO;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DAOFactory;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.pms.domain.Product;
+
+// Integration benchmark against the database in db.properties:
+// the OmsController.updateOrder reads (one order + the product list) one after
+// the other vs side by side on virtual threads.
+// Run with: java -cp ... com.kristina.ecom.console.bench.AsyncBenchmark [rounds]
+public class AsyncBenchmark {
+
+  @SuppressWarnings("unchecked")
+  public static void main(String[] args) throws DAOException {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    DAO<String, Order> orders = DAOFactory.getInstance().create(DAO.Type.ORDER_DAO);
+    DAO<Integer, Product> products = DAOFactory.getInstance().create(DAO.Type.PRODUCT_DAO);
+    AsyncDAO<String, Order> asyncOrders = new AsyncDAOAdapter<>(orders);
+    AsyncDAO<Integer, Product> asyncProducts = new AsyncDAOAdapter<>(products);
+
+    List<Order> page = orders.readPage(null, 1);
+    if (page.isEmpty()) {
+      System.out.println("No orders to read");
+      return;
+    }
+    String id = page.get(0).getId();
+
+    // warm up the pool and the statement caches
+    for (int i = 0; i < 20; i++) {
+      sequential(orders, products, id);
+      concurrent(asyncOrders, asyncProducts, id);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      sequential(orders, products, id);
+    long sequential = (System.nanoTime() - start) / rounds;
+
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      concurrent(asyncOrders, asyncProducts, id);
+    long concurrent = (System.nanoTime() - start) / rounds;
+
+    System.out.printf("%d rounds%n", rounds);
+    System.out.printf("sequential: %8.3f ms/op%n", sequential / 1e6);
+    System.out.printf("concurrent: %8.3f ms/op%n", concurrent / 1e6);
+  }
+
+  private static void sequential(DAO<String, Order> orders, DAO<Integer, Product> products, String id) throws DAOException {
+    orders.read(id);
+    products.readAll();
+  }
+
+  private static void concurrent(AsyncDAO<String, Order> orders, AsyncDAO<Integer, Product> products, String id) {
+    CompletableFuture<Order> order = orders.read(id);
+    CompletableFuture<List<Product>> all = products.readAll();
+    CompletableFuture.allOf(order, all).join();
+  }
+}
@@ -0,0 +1,60 @@
+package com.kristina.ecom.console.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kristina.ecom.dao.DAO;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.UtilDAOSql;
+import com.kristina.ecom.pms.dao.ProductDAOMySql;
+import com.kristina.ecom.pms.domain.Product;
+
+// Integration benchmark against the database in db.properties:
+// one read + one update per product vs readMany + updateAll.
+// Run with: java -cp ... com.kristina.ecom.console.bench.BatchBenchmark [lines]
+public class BatchBenchmark {
+  private static final int ROUNDS = 20;
+
+  public static void main(String[] args) throws DAOException {
+    DAO<Integer, Product> dao = new ProductDAOMySql();
+    List<Integer> ids = new ArrayList<>();
+    for (Product product : dao.readAll())
+      ids.add(product.getId());
+
+    int lines = args.length > 0 ? Integer.parseInt(args[0]) : ids.size();
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < lines; i++)
+      keys.add(ids.get(i % ids.size()));
+
+    // warm up the pool and the statement caches
+    sequential(dao, keys);
+    batched(dao, keys);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++)
+      sequential(dao, keys);
+    long sequential = (System.nanoTime() - start) / ROUNDS;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++)
+      batched(dao, keys);
+    long batched = (System.nanoTime() - start) / ROUNDS;
+
+    int chunks = (lines + UtilDAOSql.CHUNK_SIZE - 1) / UtilDAOSql.CHUNK_SIZE;
+    System.out.printf("%d lines%n", lines);
+    System.out.printf("sequential: %8.2f ms/op, %d round trips%n", sequential / 1e6, 2 * lines);
+    System.out.printf("batched:    %8.2f ms/op, %d round trips%n", batched / 1e6, chunks + 1);
+  }
+
+  // the old OrderService.create path
+  private static void sequential(DAO<Integer, Product> dao, List<Integer> keys) throws DAOException {
+    for (Integer id : keys) {
+      Product product = dao.read(id);
+      dao.update(product);
+    }
+  }
+
+  private static void batched(DAO<Integer, Product> dao, List<Integer> keys) throws DAOException {
+    dao.updateAll(dao.readMany(keys));
+  }
+}
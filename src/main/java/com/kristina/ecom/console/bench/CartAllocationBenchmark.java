@@ -0,0 +1,95 @@
+package com.kristina.ecom.console.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kristina.ecom.pms.domain.Catalog;
+import com.kristina.ecom.pms.domain.CatalogItem;
+import com.kristina.ecom.pms.domain.Component;
+import com.kristina.ecom.pms.domain.Computer;
+import com.kristina.ecom.pms.domain.ComputerBuild;
+import com.kristina.ecom.pms.domain.Product;
+
+// In-memory benchmark, no database needed:
+// builds carts of 1, 10 and 50 computers with 10 component clicks each from a 20 product catalog.
+//   copies: catalog.get (a Product copy) + a copy for the cart line (what clone() did) + Component.of
+//   shared: the catalog's CatalogItem as it is + ComputerBuild.add(item, 1)
+// Reports the bytes allocated per cart (ThreadMXBean) and the allocation rate.
+// Run with: java -cp ... com.kristina.ecom.console.bench.CartAllocationBenchmark
+public class CartAllocationBenchmark {
+  private static final int[] CARTS = {1, 10, 50};
+  private static final int CLICKS = 10;
+  private static final int CATALOG = 20;
+  private static final int ROUNDS = 20000;
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // keeps the JIT from dropping the carts
+  private static long sink;
+
+  public static void main(String[] args) {
+    List<Product> products = new ArrayList<>();
+    products.add(new Product(1, "Computer", "Base computer", 499.99, 100, null));
+    for (int i = 0; i < CATALOG; i++)
+      products.add(new Product(100 + i, "Component", "Component " + i, 10 + i, 100, null));
+    Catalog catalog = new Catalog(products);
+
+    System.out.printf("%6s %14s %14s %14s %14s%n", "carts", "copies B/op", "shared B/op", "copies MB/s", "shared MB/s");
+    for (int computers : CARTS) {
+      for (int i = 0; i < ROUNDS; i++) {
+        copies(catalog, computers);
+        shared(catalog, computers);
+      }
+      long[] copies = measure(() -> copies(catalog, computers));
+      long[] shared = measure(() -> shared(catalog, computers));
+      System.out.printf("%6d %14d %14d %14.0f %14.0f%n", computers,
+        copies[0] / ROUNDS, shared[0] / ROUNDS, rate(copies), rate(shared));
+    }
+    System.out.println(sink == 42 ? "" : "done");
+  }
+
+  // the old path
+  private static void copies(Catalog catalog, int computers) {
+    List<Computer> cart = new ArrayList<>(computers);
+    for (int c = 0; c < computers; c++) {
+      Computer computer = new ComputerBuild(catalog.getBase());
+      for (int i = 0; i < CLICKS; i++) {
+        Product product = catalog.get(100 + (c + i) % CATALOG);
+        Product line = new Product(product);
+        line.setQuantity(1);
+        computer = Component.of(computer, line);
+      }
+      cart.add(computer);
+    }
+    sink += cart.size() + (long) cart.get(0).getPrice();
+  }
+
+  private static void shared(Catalog catalog, int computers) {
+    List<Computer> cart = new ArrayList<>(computers);
+    for (int c = 0; c < computers; c++) {
+      ComputerBuild computer = new ComputerBuild(catalog.getBaseItem().line(1));
+      for (int i = 0; i < CLICKS; i++) {
+        CatalogItem item = catalog.item(100 + (c + i) % CATALOG);
+        computer.add(item, 1);
+      }
+      cart.add(computer);
+    }
+    sink += cart.size() + (long) cart.get(0).getPrice();
+  }
+
+  // {bytes, nanos} for ROUNDS runs
+  private static long[] measure(Runnable run) {
+    long bytes = THREADS.getCurrentThreadAllocatedBytes();
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++)
+      run.run();
+    long nanos = System.nanoTime() - start;
+    return new long[] {THREADS.getCurrentThreadAllocatedBytes() - bytes, nanos};
+  }
+
+  private static double rate(long[] measured) {
+    return measured[0] / 1e6 / (measured[1] / 1e9);
+  }
+}
@@ -0,0 +1,71 @@
+package com.kristina.ecom.console.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.kristina.ecom.pms.domain.Component;
+import com.kristina.ecom.pms.domain.Computer;
+import com.kristina.ecom.pms.domain.ComputerBase;
+import com.kristina.ecom.pms.domain.ComputerBuild;
+import com.kristina.ecom.pms.domain.Product;
+
+// In-memory benchmark, no database needed:
+// the MarketSpace.buy loop (add a component, print the build's description and price)
+// for 10, 100 and 1,000 components, with a Component decorator per click vs one ComputerBuild.
+// The products cycle through a catalog of 20, so lines repeat like in a real build.
+// Run with: java -cp ... com.kristina.ecom.console.bench.ComputerBuildBenchmark
+public class ComputerBuildBenchmark {
+  private static final int[] SIZES = {10, 100, 1000};
+  private static final int CATALOG = 20;
+
+  // keeps the JIT from dropping the reads
+  private static long sink;
+
+  public static void main(String[] args) {
+    Product base = new Product(1, "Computer", "Base computer", 499.99, 1, null);
+    List<Product> catalog = new ArrayList<>();
+    for (int i = 0; i < CATALOG; i++)
+      catalog.add(new Product(100 + i, "Component", "Component " + i, 10 + i, 1, null));
+
+    System.out.printf("%8s %16s %16s%n", "components", "decorators ms/op", "flat ms/op");
+    for (int size : SIZES) {
+      // fewer rounds for the big builds, the decorator chain is far from linear
+      int rounds = Math.max(3, 20000 / (size * 10));
+
+      for (int i = 0; i < rounds; i++) {
+        decorated(base, catalog, size);
+        flat(base, catalog, size);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++)
+        decorated(base, catalog, size);
+      long decorated = (System.nanoTime() - start) / rounds;
+
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++)
+        flat(base, catalog, size);
+      long flat = (System.nanoTime() - start) / rounds;
+
+      System.out.printf("%8d %16.3f %16.3f%n", size, decorated / 1e6, flat / 1e6);
+    }
+    System.out.println(sink == 42 ? "" : "done");
+  }
+
+  // the old loop: a new Component around the build for every click
+  private static void decorated(Product base, List<Product> catalog, int size) {
+    Computer computer = new ComputerBase(new Product(base), new ArrayList<>());
+    for (int i = 0; i < size; i++) {
+      computer = new Component(computer, new Product(catalog.get(i % catalog.size())));
+      sink += computer.getDescription().length() + (long) computer.getPrice();
+    }
+  }
+
+  private static void flat(Product base, List<Product> catalog, int size) {
+    Computer computer = new ComputerBuild(new Product(base));
+    for (int i = 0; i < size; i++) {
+      computer = Component.of(computer, catalog.get(i % catalog.size()));
+      sink += computer.getDescription().length() + (long) computer.getPrice();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.kristina.ecom.console.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.oms.dao.OrderDAOMySql;
+import com.kristina.ecom.oms.dao.OrderHistoryStore;
+import com.kristina.ecom.oms.domain.SalesStats;
+
+// Integration benchmark against the database in db.properties:
+// revenue per day and units per product over every order, from the history column files
+// (copied from the db into a temp directory first) vs the same GROUP BY queries in MySQL
+// over porder/orderDetails and their archives.
+// Reports ms per report and orders scanned per second.
+// Run with: java -cp ... com.kristina.ecom.console.bench.HistoryScanBenchmark [rounds]
+public class HistoryScanBenchmark {
+  private static final String DAILY = "SELECT DATE(date_time), COUNT(*), SUM(total) FROM " +
+    "(SELECT date_time, total FROM porder UNION ALL SELECT date_time, total FROM porder_archive) o " +
+    "GROUP BY DATE(date_time)";
+  private static final String UNITS = "SELECT pid, SUM(quantity) FROM " +
+    "(SELECT pid, quantity FROM orderDetails UNION ALL SELECT pid, quantity FROM orderDetails_archive) d " +
+    "GROUP BY pid ORDER BY 2 DESC LIMIT 10";
+
+  // keeps the JIT from dropping the scans
+  private static long sink;
+
+  public static void main(String[] args) throws Exception {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    DataSource datasource = DataSourceFactory.instance().getReadDataSource();
+
+    // closed days -1: everything up to tomorrow goes in
+    Path dir = Files.createTempDirectory("ecom-history");
+    OrderHistoryStore store = new OrderHistoryStore(dir.resolve("history"), new OrderDAOMySql(), -1);
+    long start = System.nanoTime();
+    int orders = store.rebuild();
+    System.out.printf("%d orders copied in %.0f ms, %d rounds%n", orders, (System.nanoTime() - start) / 1e6, rounds);
+
+    // warm up both paths
+    for (int i = 0; i < 5; i++) {
+      files(store);
+      sql(datasource);
+    }
+
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      files(store);
+    long files = (System.nanoTime() - start) / rounds;
+
+    start = System.nanoTime();
+    for (int i = 0; i < rounds; i++)
+      sql(datasource);
+    long sql = (System.nanoTime() - start) / rounds;
+
+    System.out.printf("%6s %12s %16s%n", "", "ms/report", "orders/s");
+    System.out.printf("%6s %12.3f %16.0f%n", "files", files / 1e6, orders / (files / 1e9));
+    System.out.printf("%6s %12.3f %16.0f%n", "sql", sql / 1e6, orders / (sql / 1e9));
+    System.out.println(sink == 42 ? "" : "done");
+  }
+
+  private static void files(OrderHistoryStore store) throws Exception {
+    SalesStats stats = store.stats(null, null, OrderHistoryStore.Period.DAY, 10);
+    sink += stats.getOrders() + stats.getDaily().size() + stats.getUnitsByProduct().size();
+  }
+
+  private static void sql(DataSource datasource) throws SQLException {
+    try (Connection conn = datasource.getConnection();
+         Statement stat = conn.createStatement()) {
+      try (ResultSet rs = stat.executeQuery(DAILY)) {
+        while (rs.next())
+          sink += rs.getLong(2);
+      }
+      try (ResultSet rs = stat.executeQuery(UNITS)) {
+        while (rs.next())
+          sink += rs.getLong(2);
+      }
+    }
+  }
+}
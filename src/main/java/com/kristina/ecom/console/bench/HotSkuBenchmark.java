@@ -0,0 +1,100 @@
+package com.kristina.ecom.console.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.pms.dao.InventoryDAO;
+import com.kristina.ecom.pms.dao.InventoryDAOMySql;
+import com.kristina.ecom.pms.dao.ProductDAOMySql;
+import com.kristina.ecom.pms.dao.StockShards;
+import com.kristina.ecom.pms.domain.Product;
+
+// Integration benchmark against the database in db.properties:
+// concurrent checkouts of the base computer, each one reserving a unit and putting it back,
+// with the stock on the single product row vs striped over product_stock_shard.
+// The base needs at least [threads] units in stock, the stock is left as it was found.
+// Run with: java -cp ... com.kristina.ecom.console.bench.HotSkuBenchmark [threads] [ops per thread] [stripes]
+public class HotSkuBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+    int ops = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+    int stripes = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+    DataSource datasource = DataSourceFactory.instance().getDataSource();
+
+    Product base = null;
+    for (Product product : new ProductDAOMySql().readAll()) {
+      if (product.getType().equals("Computer")) {
+        base = product;
+        break;
+      }
+    }
+    if (base == null) {
+      System.out.println("No base computer to reserve");
+      return;
+    }
+    int id = base.getId();
+
+    // start from the product row, whatever an earlier run or the app left on the stripes
+    StockShards striped = new StockShards(datasource, Set.of(id), stripes);
+    striped.fold(id);
+
+    InventoryDAO single = new InventoryDAOMySql(new StockShards(datasource, Set.of(), stripes));
+    InventoryDAO sharded = new InventoryDAOMySql(striped);
+
+    run(single, id, threads, ops / 10);
+    Result row = run(single, id, threads, ops);
+    run(sharded, id, threads, ops / 10);
+    Result stripe = run(sharded, id, threads, ops);
+    striped.fold(id);
+
+    System.out.printf("%d threads x %d checkouts, %d stripes%n", threads, ops, stripes);
+    System.out.printf("single row: %10.0f checkouts/s  %6d out of stock%n", row.throughput(), row.failed);
+    System.out.printf("striped   : %10.0f checkouts/s  %6d out of stock%n", stripe.throughput(), stripe.failed);
+  }
+
+  private static Result run(InventoryDAO inventory, int id, int threads, int ops) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    AtomicInteger failed = new AtomicInteger();
+    Map<Integer, Integer> line = Map.of(id, 1);
+    List<Future<?>> futures = new ArrayList<>();
+
+    long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < ops; i++) {
+          try {
+            if (inventory.reserve(line).isEmpty())
+              inventory.restock(line);
+            else
+              failed.incrementAndGet();
+          } catch (DAOException ex) {
+            ex.printStackTrace();
+          }
+        }
+      }));
+    }
+    for (Future<?> future : futures)
+      future.get();
+    long elapsed = System.nanoTime() - start;
+    executor.shutdown();
+
+    return new Result((long) threads * ops, elapsed, failed.get());
+  }
+
+  private record Result(long ops, long nanos, int failed) {
+    double throughput() {
+      return ops / (nanos / 1e9);
+    }
+  }
+}
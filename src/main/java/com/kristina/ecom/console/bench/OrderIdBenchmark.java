@@ -0,0 +1,71 @@
+package com.kristina.ecom.console.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import com.kristina.ecom.oms.domain.OrderIdGenerator;
+
+// Contention benchmark for OrderIdGenerator, no database needed:
+// 1..N platform threads hammer one generator, prints throughput and checks that
+// every id is unique and that each thread saw its ids increase.
+// Run with: java -cp ... com.kristina.ecom.console.bench.OrderIdBenchmark [ids per thread] [max threads]
+public class OrderIdBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 2 * Runtime.getRuntime().availableProcessors();
+
+    // warm up
+    run(new OrderIdGenerator(1), 4, perThread);
+
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      OrderIdGenerator generator = new OrderIdGenerator(1);
+      long start = System.nanoTime();
+      long[][] ids = run(generator, threads, perThread);
+      long elapsed = System.nanoTime() - start;
+
+      long total = (long) threads * perThread;
+      System.out.printf("%3d threads: %10.0f ids/s, %6.1f ns/id, %s%n",
+        threads, total / (elapsed / 1e9), (double) elapsed / total, check(ids));
+    }
+  }
+
+  private static long[][] run(OrderIdGenerator generator, int threads, int perThread) throws InterruptedException {
+    long[][] ids = new long[threads][perThread];
+    CountDownLatch ready = new CountDownLatch(threads);
+    CountDownLatch go = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      long[] mine = ids[t];
+      workers[t] = new Thread(() -> {
+        ready.countDown();
+        try {
+          go.await();
+        } catch (InterruptedException ex) {
+          return;
+        }
+        for (int i = 0; i < mine.length; i++)
+          mine[i] = generator.nextLong();
+      });
+      workers[t].start();
+    }
+    ready.await();
+    go.countDown();
+    for (Thread worker : workers)
+      worker.join();
+    return ids;
+  }
+
+  private static String check(long[][] ids) {
+    for (long[] mine : ids)
+      for (int i = 1; i < mine.length; i++)
+        if (mine[i] <= mine[i - 1])
+          return "NOT ORDERED";
+
+    long[] all = Arrays.stream(ids).flatMapToLong(Arrays::stream).sorted().toArray();
+    for (int i = 1; i < all.length; i++)
+      if (all[i] == all[i - 1])
+        return "DUPLICATE " + Long.toHexString(all[i]);
+    return "unique";
+  }
+}
@@ -0,0 +1,92 @@
+package com.kristina.ecom.console.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.oms.domain.OrderIdGenerator;
+import com.kristina.ecom.pms.dao.ProductDAOMySql;
+import com.kristina.ecom.pms.domain.Product;
+
+// Integration benchmark against the database in db.properties:
+// writing an order with 1 to 100 lines, one executeUpdate per orderDetails row vs
+// addBatch/executeBatch (sent as one multi-row INSERT, rewriteBatchedStatements is on).
+// Every order is rolled back, the tables are left as they were.
+// Run with: java -cp ... com.kristina.ecom.console.bench.OrderLinesBenchmark [rounds]
+public class OrderLinesBenchmark {
+  private static final int[] SIZES = {1, 2, 5, 10, 25, 50, 100};
+
+  public static void main(String[] args) throws Exception {
+    int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    DataSource datasource = DataSourceFactory.instance().getDataSource();
+
+    // a line per product, (oid, pid) is the key of orderDetails
+    List<Integer> ids = new ArrayList<>();
+    for (Product product : new ProductDAOMySql().readAll())
+      ids.add(product.getId());
+
+    System.out.printf("%d rounds, %d products%n", rounds, ids.size());
+    System.out.printf("%6s %14s %14s%n", "lines", "per row ms/op", "batched ms/op");
+    for (int size : SIZES) {
+      if (size > ids.size())
+        break;
+      List<Integer> lines = ids.subList(0, size);
+
+      // warm up the pool and the statement caches
+      for (int i = 0; i < 5; i++) {
+        write(datasource, lines, false);
+        write(datasource, lines, true);
+      }
+
+      long start = System.nanoTime();
+      for (int i = 0; i < rounds; i++)
+        write(datasource, lines, false);
+      long perRow = (System.nanoTime() - start) / rounds;
+
+      start = System.nanoTime();
+      for (int i = 0; i < rounds; i++)
+        write(datasource, lines, true);
+      long batched = (System.nanoTime() - start) / rounds;
+
+      System.out.printf("%6d %14.3f %14.3f%n", size, perRow / 1e6, batched / 1e6);
+    }
+  }
+
+  // the statements of OrderDAOMySql.create, without the stock reservation
+  private static void write(DataSource datasource, List<Integer> lines, boolean batched) throws SQLException {
+    String id = OrderIdGenerator.getInstance().next();
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement("INSERT INTO porder VALUES(? ,?, ?, ?)");
+           PreparedStatement stat2 = conn.prepareStatement("INSERT INTO orderDetails VALUES(?, ?, ?)")) {
+        stat.setString(1, id);
+        stat.setString(2, "benchmark");
+        stat.setFloat(3, 0);
+        stat.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+        stat.executeUpdate();
+
+        for (Integer pid : lines) {
+          stat2.setString(1, id);
+          stat2.setInt(2, pid);
+          stat2.setInt(3, 1);
+          if (batched)
+            stat2.addBatch();
+          else
+            stat2.executeUpdate();
+        }
+        if (batched)
+          stat2.executeBatch();
+      } finally {
+        conn.rollback();
+      }
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package com.kristina.ecom.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// non-blocking counterpart of DAO, a failed future carries the DAOException inside a CompletionException
+public interface AsyncDAO<K, V> {
+  CompletableFuture<V> create(V v);
+  CompletableFuture<List<V>> readAll();
+  CompletableFuture<V> read(K k);
+  CompletableFuture<Integer> update(V v);
+  CompletableFuture<Integer> delete(K k);
+  CompletableFuture<List<V>> readMany(List<K> ks);
+  CompletableFuture<List<V>> readPage(K after, int limit);
+
+  // anything else the blocking DAO can do, run the same way
+  <T> CompletableFuture<T> supply(Call<K, V, T> call);
+
+  // the blocking DAO underneath
+  DAO<K, V> dao();
+
+  public interface Call<K, V, T> {
+    T call(DAO<K, V> dao) throws DAOException;
+  }
+}
@@ -0,0 +1,74 @@
+package com.kristina.ecom.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// runs each call of a blocking DAO on its own virtual thread. the threads are cheap,
+// the real limit on concurrent db work is still the connection pool
+public class AsyncDAOAdapter<K, V> implements AsyncDAO<K, V> {
+  private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final DAO<K, V> dao;
+
+  public AsyncDAOAdapter(DAO<K, V> dao) {
+    this.dao = dao;
+  }
+
+  @Override
+  public CompletableFuture<V> create(V v) {
+    return supply(dao -> dao.create(v));
+  }
+
+  @Override
+  public CompletableFuture<List<V>> readAll() {
+    return supply(dao -> dao.readAll());
+  }
+
+  @Override
+  public CompletableFuture<V> read(K k) {
+    return supply(dao -> dao.read(k));
+  }
+
+  @Override
+  public CompletableFuture<Integer> update(V v) {
+    return supply(dao -> dao.update(v));
+  }
+
+  @Override
+  public CompletableFuture<Integer> delete(K k) {
+    return supply(dao -> dao.delete(k));
+  }
+
+  @Override
+  public CompletableFuture<List<V>> readMany(List<K> ks) {
+    return supply(dao -> dao.readMany(ks));
+  }
+
+  @Override
+  public CompletableFuture<List<V>> readPage(K after, int limit) {
+    return supply(dao -> dao.readPage(after, limit));
+  }
+
+  @Override
+  public <T> CompletableFuture<T> supply(Call<K, V, T> call) {
+    // the caller's read-your-writes pin goes with the call
+    long pinnedUntil = ReadYourWrites.pinnedUntil();
+    return CompletableFuture.supplyAsync(() -> {
+      ReadYourWrites.begin(pinnedUntil, null);
+      try {
+        return call.call(dao);
+      } catch (DAOException ex) {
+        throw new CompletionException(ex);
+      } finally {
+        ReadYourWrites.end();
+      }
+    }, executor);
+  }
+
+  @Override
+  public DAO<K, V> dao() {
+    return dao;
+  }
+}
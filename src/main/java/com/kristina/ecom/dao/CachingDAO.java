@@ -0,0 +1,146 @@
+package com.kristina.ecom.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+// read-through cache in front of any DAO. read/readMany are served from the cache,
+// every write goes to the db first and then drops what it touched.
+// delete(k) clears the whole cache because some DAOs read and delete by different keys
+// (the shopping cart is read by user id and deleted by cart id)
+public class CachingDAO<K, V> implements DAO<K, V> {
+  private final DAO<K, V> dao;
+  private final DAOCache<K, V> cache;
+  private final Function<V, K> key;
+  // copies values going in and out of the cache, identity for types nobody mutates
+  private final UnaryOperator<V> copy;
+
+  public CachingDAO(DAO<K, V> dao, DAOCache<K, V> cache, Function<V, K> key, UnaryOperator<V> copy) {
+    this.dao = dao;
+    this.cache = cache;
+    this.key = key;
+    this.copy = copy;
+  }
+
+  @Override
+  public V create(V v) throws DAOException {
+    V created = dao.create(v);
+    evict(created);
+    return created;
+  }
+
+  @Override
+  public List<V> readAll() throws DAOException {
+    return dao.readAll();
+  }
+
+  @Override
+  public V read(K k) throws DAOException {
+    V v = cache.get(k);
+    if (v != null)
+      return copy.apply(v);
+
+    long stamp = cache.stamp();
+    v = dao.read(k);
+    if (v != null)
+      cache.put(k, copy.apply(v), stamp);
+    return v;
+  }
+
+  @Override
+  public int update(V v) throws DAOException {
+    int rows = dao.update(v);
+    evict(v);
+    return rows;
+  }
+
+  @Override
+  public int delete(K k) throws DAOException {
+    int rows = dao.delete(k);
+    cache.clear();
+    return rows;
+  }
+
+  @Override
+  public List<String> getTypes() throws DAOException {
+    return dao.getTypes();
+  }
+
+  @Override
+  public List<V> createAll(List<V> vs) throws DAOException {
+    List<V> created = dao.createAll(vs);
+    for (V v : created)
+      evict(v);
+    return created;
+  }
+
+  // hits come from the cache, the misses go out in one readMany
+  @Override
+  public List<V> readMany(List<K> ks) throws DAOException {
+    List<V> vs = new ArrayList<>();
+    List<K> missing = new ArrayList<>();
+    for (K k : ks) {
+      V v = cache.get(k);
+      if (v != null)
+        vs.add(copy.apply(v));
+      else
+        missing.add(k);
+    }
+    if (missing.isEmpty())
+      return vs;
+
+    long stamp = cache.stamp();
+    for (V v : dao.readMany(missing)) {
+      cache.put(key.apply(v), copy.apply(v), stamp);
+      vs.add(v);
+    }
+    return vs;
+  }
+
+  @Override
+  public int updateAll(List<V> vs) throws DAOException {
+    int rows = dao.updateAll(vs);
+    for (V v : vs)
+      evict(v);
+    return rows;
+  }
+
+  @Override
+  public int deleteAll(List<K> ks) throws DAOException {
+    int rows = dao.deleteAll(ks);
+    cache.clear();
+    return rows;
+  }
+
+  @Override
+  public List<V> readPage(K after, int limit) throws DAOException {
+    return dao.readPage(after, limit);
+  }
+
+  @Override
+  public Stream<V> stream() throws DAOException {
+    return dao.stream();
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this) || dao.isWrapperFor(iface);
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws DAOException {
+    if (iface.isInstance(this))
+      return iface.cast(this);
+    return dao.unwrap(iface);
+  }
+
+  private void evict(V v) {
+    K k = v == null ? null : key.apply(v);
+    if (k != null)
+      cache.evict(k);
+    else
+      cache.clear();
+  }
+}
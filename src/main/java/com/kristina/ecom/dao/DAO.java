@@ -1,6 +1,7 @@
 package com.kristina.ecom.dao;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.stream.Stream;
 
 public interface DAO<K, V> {
   V create(V v) throws DAOException;
@@ -12,7 +13,61 @@ public interface DAO<K, V> {
     return new ArrayList<>();
   }
 
+  // batch operations, one round trip per batch where the backend allows it.
+  // these defaults fall back to one call per entity.
+  default List<V> createAll(List<V> vs) throws DAOException {
+    for (V v : vs)
+      create(v);
+    return vs;
+  }
+
+  // keys that don't exist are skipped, the order of the result is not guaranteed
+  default List<V> readMany(List<K> ks) throws DAOException {
+    List<V> vs = new ArrayList<>();
+    for (K k : ks) {
+      V v = read(k);
+      if (v != null)
+        vs.add(v);
+    }
+    return vs;
+  }
+
+  default int updateAll(List<V> vs) throws DAOException {
+    int rows = 0;
+    for (V v : vs)
+      rows += update(v);
+    return rows;
+  }
+
+  default int deleteAll(List<K> ks) throws DAOException {
+    int rows = 0;
+    for (K k : ks)
+      rows += delete(k);
+    return rows;
+  }
+
+  // keyset paging: at most limit entities with a key after the given one (null for the first page), in key order.
+  // no default, only the backend knows its key order
+  List<V> readPage(K after, int limit) throws DAOException;
+
+  // lazily consumed rows, the stream holds a cursor/connection so close it (try-with-resources).
+  // errors while iterating surface as UncheckedDAOException
+  default Stream<V> stream() throws DAOException {
+    return readAll().stream();
+  }
+
+  // the DAO behind any decorators added by DAOFactory, for backend specific methods
+  default boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this);
+  }
+
+  default <T> T unwrap(Class<T> iface) throws DAOException {
+    if (iface.isInstance(this))
+      return iface.cast(this);
+    throw new DAOException("Not a " + iface.getName(), new ClassCastException(getClass().getName()));
+  }
+
   public enum Type {
-    SQL, PRODUCT_DAO, ORDER_DAO, MONGO, SHOPPING_CART_DAO, JPA, CUSTOMER_DAO, ADDRESS_DAO
+    SQL, PRODUCT_DAO, ORDER_DAO, MONGO, SHOPPING_CART_DAO, JPA, CUSTOMER_DAO, ADDRESS_DAO, SHARDED
   }
 }
@@ -0,0 +1,88 @@
+package com.kristina.ecom.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+
+// size and time bounded LRU map behind CachingDAO, one per DAO.Type.
+// publishes cache.gets{result=hit|miss}, cache.puts, cache.evictions and cache.size tagged with the cache name
+public class DAOCache<K, V> {
+  private final int maxSize;
+  private final long ttlNanos;
+  private final LinkedHashMap<K, Entry<V>> entries;
+  // bumped by every invalidation, a load that started before it must not be cached
+  private long stamp;
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter puts;
+  private final Counter evictions;
+
+  public DAOCache(String name, int maxSize, long ttl, TimeUnit unit) {
+    this.maxSize = maxSize;
+    this.ttlNanos = unit.toNanos(ttl);
+    // access order, so the eldest entry is the least recently used one
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+        if (size() <= DAOCache.this.maxSize)
+          return false;
+        evictions.increment();
+        return true;
+      }
+    };
+
+    hits = Counter.builder("cache.gets").tag("cache", name).tag("result", "hit").register(Metrics.globalRegistry);
+    misses = Counter.builder("cache.gets").tag("cache", name).tag("result", "miss").register(Metrics.globalRegistry);
+    puts = Counter.builder("cache.puts").tag("cache", name).register(Metrics.globalRegistry);
+    evictions = Counter.builder("cache.evictions").tag("cache", name).register(Metrics.globalRegistry);
+    Gauge.builder("cache.size", this, DAOCache::size).tag("cache", name).register(Metrics.globalRegistry);
+  }
+
+  public synchronized V get(K k) {
+    Entry<V> entry = entries.get(k);
+    if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+      entries.remove(k);
+      evictions.increment();
+      entry = null;
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry.value;
+  }
+
+  public synchronized long stamp() {
+    return stamp;
+  }
+
+  // caches a value loaded from the db, unless something was invalidated since the load began
+  public synchronized void put(K k, V v, long loadStamp) {
+    if (k == null || v == null || loadStamp != stamp)
+      return;
+    entries.put(k, new Entry<>(v, System.nanoTime() + ttlNanos));
+    puts.increment();
+  }
+
+  public synchronized void evict(K k) {
+    stamp++;
+    entries.remove(k);
+  }
+
+  public synchronized void clear() {
+    stamp++;
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private record Entry<V>(V value, long expiresAt) {}
+}
@@ -1,10 +1,22 @@
 package com.kristina.ecom.dao;
 import java.io.IOException;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import com.kristina.ecom.cart.domain.ShoppingCart;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.pms.dao.ProductDAOMongo;
+import com.kristina.ecom.pms.domain.Product;
 
 public class DAOFactory implements AbstractFactory {
   private static DAOFactory instance = new DAOFactory();
   private Properties properties;
+  // one cache per type, shared by every DAO the factory hands out
+  private final Map<DAO.Type, DAOCache> caches = new ConcurrentHashMap<>();
 
   private DAOFactory() {
     load("db.properties");
@@ -19,13 +31,80 @@ public class DAOFactory implements AbstractFactory {
       return null;
     }
 
+    DAO dao = null;
     // read the prop file
-    if (properties.get(type.name()).equals(DAO.Type.SQL.name())) 
-          return SQLFactory.getInstance().create(type);
-    else if (properties.get(type.name()).equals(DAO.Type.MONGO.name())) 
-          return MongoFactory.getInstance().create(type);
+    String backend = properties.getProperty(type.name()).trim();
+    if (backend.equals(DAO.Type.SQL.name())) 
+          dao = SQLFactory.getInstance().create(type);
+    else if (backend.equals(DAO.Type.MONGO.name())) 
+          dao = MongoFactory.getInstance().create(type);
+    else if (backend.equals(DAO.Type.JPA.name()))
+          dao = JPAFactory.getInstance().create(type);
+    else if (backend.equals(DAO.Type.SHARDED.name()))
+          dao = ShardedFactory.getInstance().create(type);
+
+    if (dao == null)
+      return null;
+    // the metering sits under the cache, so it times the db and not the cache hits
+    DAO metered = new MeteringDAO(dao, type, backend);
+    if (!Boolean.parseBoolean(properties.getProperty(type.name() + "_CACHE", "false").trim()))
+      return metered;
+    return new CachingDAO(metered, cache(type), keyOf(type, dao), copyOf(type));
+  }
+
+  // same DAO, each call on a virtual thread
+  public AsyncDAO createAsync(DAO.Type type) {
+    DAO dao = create(type);
+    return dao == null ? null : new AsyncDAOAdapter(dao);
+  }
+
+  // drop cached entries after a write that bypassed the DAOs of this factory
+  public void evict(DAO.Type type, Object key) {
+    DAOCache cache = caches.get(type);
+    if (cache != null)
+      cache.evict(key);
+  }
+
+  public void invalidate(DAO.Type type) {
+    DAOCache cache = caches.get(type);
+    if (cache != null)
+      cache.clear();
+  }
+
+  private DAOCache cache(DAO.Type type) {
+    return caches.computeIfAbsent(type, t -> new DAOCache(t.name(),
+      Integer.parseInt(properties.getProperty(t.name() + "_CACHE_SIZE", "1000").trim()),
+      Long.parseLong(properties.getProperty(t.name() + "_CACHE_TTL_SECONDS", "60").trim()),
+      TimeUnit.SECONDS));
+  }
+
+  // the key read(k) is called with, taken from a value
+  private Function keyOf(DAO.Type type, DAO dao) {
+    if (dao instanceof JPADao jpa)
+      return jpa::idOf;
+
+    switch (type) {
+      case PRODUCT_DAO:
+        return dao instanceof ProductDAOMongo
+          ? (Function<Product, String>) p -> String.valueOf(p.getId())
+          : (Function<Product, Integer>) Product::getId;
+      case ORDER_DAO:
+        return (Function<Order, String>) Order::getId;
+      case SHOPPING_CART_DAO:
+        // the active cart is read by user id
+        return (Function<ShoppingCart, String>) ShoppingCart::getUserId;
+      default:
+        throw new IllegalArgumentException("no cache key for type: " + type);
+    }
+  }
 
-    return null;
+  // products and carts get mutated by the services before they are written back, so hand out copies
+  private UnaryOperator copyOf(DAO.Type type) {
+    if (type == DAO.Type.PRODUCT_DAO)
+      return (UnaryOperator<Product>) Product::new;
+    if (type == DAO.Type.SHOPPING_CART_DAO)
+      return (UnaryOperator<ShoppingCart>) ShoppingCart::new;
+    return UnaryOperator.identity();
   }
 
   private void load(String fname) {
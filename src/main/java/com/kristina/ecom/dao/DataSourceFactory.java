@@ -1,15 +1,27 @@
 package com.kristina.ecom.dao;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import javax.sql.DataSource;
-import com.mysql.cj.jdbc.MysqlDataSource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.Metrics;
 
 public class DataSourceFactory {
   // Singleton pattern, only one instance can be created
   // The static keyword means that the instance variable belongs to the class itself, not to any particular object (instance) of the class.
   private static DataSourceFactory instance = new DataSourceFactory("db.properties");
   private Properties props;
+  private HikariDataSource datasource;
+  private List<HikariDataSource> replicas = new ArrayList<>();
+  private List<HikariDataSource> shards;
+  private RoutingDataSource writes;
+  private RoutingDataSource reads;
 
   // Singleton pattern, private constructor, can't be called outside of the class
   private DataSourceFactory(String fname) {
@@ -19,18 +31,114 @@ public class DataSourceFactory {
     } catch (IOException ex) {
       ex.printStackTrace();
     }
+    ReadYourWrites.setWindow(getLong("READ_YOUR_WRITES_MS", 5000));
   }
 
   public static DataSourceFactory instance() {
     return instance;
   }
 
-  public DataSource getDataSource() {
-    MysqlDataSource datasource = new MysqlDataSource();
-      datasource.setURL(props.getProperty(("DB_URL")));
-      datasource.setUser(props.getProperty(("DB_USER")));
-      datasource.setPassword(props.getProperty(("DB_PASSWORD")));
+  // the primary: one bounded pool shared by every SQL DAO, created on first use.
+  // every connection taken from it pins the caller's reads to the primary for a while
+  public synchronized DataSource getDataSource() {
+    init();
+    return writes;
+  }
+
+  // for reads that may lag a little behind the writes: the DB_REPLICA_URLS pools
+  // (the primary when there are none, or when the caller just wrote)
+  public synchronized DataSource getReadDataSource() {
+    init();
+    return reads;
+  }
+
+  // one pool per ORDER_SHARD_URLS entry, in order: the index is the shard number of the
+  // order shard map. empty when no shards are configured
+  public synchronized List<DataSource> getShardDataSources() {
+    if (shards == null) {
+      shards = new ArrayList<>();
+      String urls = props.getProperty("ORDER_SHARD_URLS", "").trim();
+      if (!urls.isEmpty()) {
+        String user = props.getProperty("ORDER_SHARD_USER", props.getProperty("DB_USER"));
+        String password = props.getProperty("ORDER_SHARD_PASSWORD", props.getProperty("DB_PASSWORD"));
+        for (String url : urls.split(","))
+          shards.add(new HikariDataSource(config("ecom-mysql-shard-" + shards.size(), url.trim(), user, password, false)));
+      }
+    }
+    return new ArrayList<>(shards);
+  }
+
+  public synchronized void release() {
+    if (datasource != null && !datasource.isClosed()) {
+      datasource.close();
+    }
+    for (HikariDataSource replica : replicas) {
+      if (!replica.isClosed())
+        replica.close();
+    }
+    if (shards != null) {
+      for (HikariDataSource shard : shards) {
+        if (!shard.isClosed())
+          shard.close();
+      }
+    }
+  }
+
+  private void init() {
+    if (datasource != null)
+      return;
+    datasource = new HikariDataSource(config("ecom-mysql", props.getProperty("DB_URL"),
+      props.getProperty("DB_USER"), props.getProperty("DB_PASSWORD"), false));
+
+    String urls = props.getProperty("DB_REPLICA_URLS", "").trim();
+    if (!urls.isEmpty()) {
+      String user = props.getProperty("DB_REPLICA_USER", props.getProperty("DB_USER"));
+      String password = props.getProperty("DB_REPLICA_PASSWORD", props.getProperty("DB_PASSWORD"));
+      for (String url : urls.split(","))
+        replicas.add(new HikariDataSource(config("ecom-mysql-replica-" + replicas.size(), url.trim(), user, password, true)));
+    }
+
+    writes = RoutingDataSource.writes(datasource);
+    reads = RoutingDataSource.reads(datasource, new ArrayList<>(replicas));
+    Runtime.getRuntime().addShutdownHook(new Thread(this::release));
+  }
+
+  private HikariConfig config(String pool, String url, String user, String password, boolean replica) {
+    HikariConfig config = new HikariConfig();
+    config.setPoolName(pool);
+    config.setJdbcUrl(url);
+    config.setUsername(user);
+    config.setPassword(password);
+    config.setReadOnly(replica);
+
+    config.setMaximumPoolSize(getInt("DB_POOL_MAX_SIZE", 10));
+    config.setMinimumIdle(getInt("DB_POOL_MIN_IDLE", 2));
+    // a replica that doesn't answer quickly is skipped for the primary
+    config.setConnectionTimeout(replica ? getLong("DB_REPLICA_CONNECTION_TIMEOUT_MS", 1000)
+                                        : getLong("DB_POOL_CONNECTION_TIMEOUT_MS", 30000));
+    config.setIdleTimeout(getLong("DB_POOL_IDLE_TIMEOUT_MS", 600000));
+    config.setMaxLifetime(getLong("DB_POOL_MAX_LIFETIME_MS", 1800000));
+    // logs a stack trace for any connection held longer than this (0 disables it)
+    config.setLeakDetectionThreshold(getLong("DB_POOL_LEAK_DETECTION_MS", 20000));
+
+    config.addDataSourceProperty("cachePrepStmts", "true");
+    config.addDataSourceProperty("prepStmtCacheSize", "250");
+    config.addDataSourceProperty("useServerPrepStmts", "true");
+    // lets the driver turn addBatch()/executeBatch() into multi-row statements
+    config.addDataSourceProperty("rewriteBatchedStatements", "true");
+
+    // hikaricp.connections.acquire/usage/pending/active/idle/timeout, picked up by actuator
+    config.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(Metrics.globalRegistry));
+    return config;
+  }
+
+  private int getInt(String key, int defaultValue) {
+    String value = props.getProperty(key);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
 
-      return datasource;
+  private long getLong(String key, long defaultValue) {
+    String value = props.getProperty(key);
+    return value == null ? defaultValue : Long.parseLong(value.trim());
   }
 }
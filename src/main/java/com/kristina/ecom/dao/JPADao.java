@@ -1,11 +1,18 @@
 package com.kristina.ecom.dao;
 
 import java.lang.reflect.ParameterizedType;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.metamodel.EntityType;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public abstract class JPADao<K, V> implements DAO<K, V> {
-  
+  // entities flushed per JDBC batch, should match hibernate.jdbc.batch_size
+  private static final int BATCH_SIZE = JPAFactory.getBatchSize();
+
   protected final EntityManagerFactory emf;
   private final Class<V> clazz;
 
@@ -29,6 +36,34 @@ public abstract class JPADao<K, V> implements DAO<K, V> {
     });
   }
 
+  @Override
+  public List<V> readPage(K after, int limit) {
+    return emf.callInTransaction(em -> {
+      String query = "from " + clazz.getSimpleName() + " e" + (after == null ? "" : " where e." + idName() + " > :after") + " order by e." + idName();
+      TypedQuery<V> typed = em.createQuery(query, clazz).setMaxResults(limit);
+      if (after != null)
+        typed.setParameter("after", after);
+      return typed.getResultList();
+    });
+  }
+
+  // backed by a scrollable, read-only Hibernate result set, the entity manager lives until the stream is closed
+  @Override
+  public Stream<V> stream() {
+    EntityManager em = emf.createEntityManager();
+    try {
+      return em.createQuery("from " + clazz.getSimpleName(), clazz)
+        .setHint("org.hibernate.fetchSize", Integer.MIN_VALUE)
+        .setHint("org.hibernate.readOnly", true)
+        .getResultStream()
+        .peek(em::detach) // keeps the persistence context from growing with the table
+        .onClose(em::close);
+    } catch (RuntimeException ex) {
+      em.close();
+      throw ex;
+    }
+  }
+
   public V read(K k) {
     return emf.callInTransaction(em  -> {
       return em.find(clazz, k);
@@ -49,4 +84,72 @@ public abstract class JPADao<K, V> implements DAO<K, V> {
     });
     return 1;
   }
+
+  @Override
+  public List<V> createAll(List<V> vs) {
+    emf.runInTransaction(em -> {
+      for (int i = 0; i < vs.size(); i++) {
+        em.persist(vs.get(i));
+        flushEvery(em, i);
+      }
+    });
+    return vs;
+  }
+
+  @Override
+  public List<V> readMany(List<K> ks) {
+    if (ks.isEmpty())
+      return new ArrayList<>();
+
+    return emf.callInTransaction(em -> {
+      return em.createQuery("from " + clazz.getSimpleName() + " e where e." + idName() + " in :ids", clazz)
+        .setParameter("ids", ks)
+        .getResultList();
+    });
+  }
+
+  @Override
+  public int updateAll(List<V> vs) {
+    emf.runInTransaction(em -> {
+      for (int i = 0; i < vs.size(); i++) {
+        em.merge(vs.get(i));
+        flushEvery(em, i);
+      }
+    });
+    return vs.size();
+  }
+
+  @Override
+  public int deleteAll(List<K> ks) {
+    return emf.callInTransaction(em -> {
+      int rows = 0;
+      for (int i = 0; i < ks.size(); i++) {
+        V v = em.find(clazz, ks.get(i));
+        if (v != null) {
+          em.remove(v);
+          rows++;
+        }
+        flushEvery(em, i);
+      }
+      return rows;
+    });
+  }
+
+  // push the pending statements as one JDBC batch and drop them from the persistence context
+  private void flushEvery(EntityManager em, int i) {
+    if ((i + 1) % BATCH_SIZE == 0) {
+      em.flush();
+      em.clear();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public K idOf(V v) {
+    return (K) emf.getPersistenceUnitUtil().getIdentifier(v);
+  }
+
+  protected String idName() {
+    EntityType<V> type = emf.getMetamodel().entity(clazz);
+    return type.getId(type.getIdType().getJavaType()).getName();
+  }
 }
@@ -1,26 +1,39 @@
 package com.kristina.ecom.dao;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
 import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.Persistence;
+import com.kristina.ecom.cms.dao.AddressDAO;
 import com.kristina.ecom.cms.dao.CustomerDAO;
 
 
 public class JPAFactory implements AbstractFactory {
+  private static Properties properties = load("db.properties");
   private static JPAFactory instance = new JPAFactory();
   private static EntityManagerFactory emf;
 
-  private JPAFactory() {
-    load("db.properties");
-  }
+  private JPAFactory() {}
 
 
   public static EntityManagerFactory getEmFactory(String pu) {
     if (emf == null ) {
-      emf = Persistence.createEntityManagerFactory(pu);
+      Map<String, Object> settings = new HashMap<>();
+      settings.put("hibernate.jdbc.batch_size", getBatchSize());
+      settings.put("hibernate.order_inserts", true);
+      settings.put("hibernate.order_updates", true);
+      emf = Persistence.createEntityManagerFactory(pu, settings);
     }
     return emf;
   }
 
+  public static int getBatchSize() {
+    return Integer.parseInt(properties.getProperty("JPA_BATCH_SIZE", "50").trim());
+  }
+
   public static void release() {
     if (emf != null && emf.isOpen()) {
       emf.close();
@@ -32,6 +45,28 @@ public class JPAFactory implements AbstractFactory {
   }
 
   public DAO create(DAO.Type type) {
-    return new CustomerDAO();
+    if (type == null) {
+      return null;
+    }
+
+    switch (type) {
+      case CUSTOMER_DAO:
+        return new CustomerDAO();
+      case ADDRESS_DAO:
+        return new AddressDAO();
+      default:
+      throw new IllegalArgumentException("no such type: " + type);
+    }
+  }
+
+  private static Properties load(String fname) {
+    Properties properties = new Properties();
+
+    try {
+      properties.load(JPAFactory.class.getClassLoader().getResourceAsStream(fname));
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+    return properties;
   }
 }
@@ -0,0 +1,146 @@
+package com.kristina.ecom.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+// times every call of the wrapped DAO, tagged type/backend/method:
+//   dao.calls   timer with p50/p95/p99 (count = number of calls)
+//   dao.errors  counter, also tagged with the exception
+//   dao.rows    entities returned or rows affected
+// served by actuator under /actuator/metrics/dao.calls?tag=type:ORDER_DAO ...
+public class MeteringDAO<K, V> implements DAO<K, V> {
+  private final DAO<K, V> dao;
+  private final String type;
+  private final String backend;
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+  private final Map<String, DistributionSummary> rows = new ConcurrentHashMap<>();
+
+  public MeteringDAO(DAO<K, V> dao, DAO.Type type, String backend) {
+    this.dao = dao;
+    this.type = type.name();
+    this.backend = backend;
+  }
+
+  @Override
+  public V create(V v) throws DAOException {
+    return record("create", () -> dao.create(v));
+  }
+
+  @Override
+  public List<V> readAll() throws DAOException {
+    return rows("readAll", record("readAll", () -> dao.readAll()));
+  }
+
+  @Override
+  public V read(K k) throws DAOException {
+    return record("read", () -> dao.read(k));
+  }
+
+  @Override
+  public int update(V v) throws DAOException {
+    return rows("update", record("update", () -> dao.update(v)));
+  }
+
+  @Override
+  public int delete(K k) throws DAOException {
+    return rows("delete", record("delete", () -> dao.delete(k)));
+  }
+
+  @Override
+  public List<String> getTypes() throws DAOException {
+    return record("getTypes", () -> dao.getTypes());
+  }
+
+  @Override
+  public List<V> createAll(List<V> vs) throws DAOException {
+    return rows("createAll", record("createAll", () -> dao.createAll(vs)));
+  }
+
+  @Override
+  public List<V> readMany(List<K> ks) throws DAOException {
+    return rows("readMany", record("readMany", () -> dao.readMany(ks)));
+  }
+
+  @Override
+  public int updateAll(List<V> vs) throws DAOException {
+    return rows("updateAll", record("updateAll", () -> dao.updateAll(vs)));
+  }
+
+  @Override
+  public int deleteAll(List<K> ks) throws DAOException {
+    return rows("deleteAll", record("deleteAll", () -> dao.deleteAll(ks)));
+  }
+
+  @Override
+  public List<V> readPage(K after, int limit) throws DAOException {
+    return rows("readPage", record("readPage", () -> dao.readPage(after, limit)));
+  }
+
+  // only opening the cursor is timed, the rows are pulled later by the caller
+  @Override
+  public Stream<V> stream() throws DAOException {
+    return record("stream", () -> dao.stream());
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) {
+    return iface.isInstance(this) || dao.isWrapperFor(iface);
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws DAOException {
+    if (iface.isInstance(this))
+      return iface.cast(this);
+    return dao.unwrap(iface);
+  }
+
+  private interface Call<T> {
+    T call() throws DAOException;
+  }
+
+  private <T> T record(String method, Call<T> call) throws DAOException {
+    long start = System.nanoTime();
+    try {
+      return call.call();
+    } catch (DAOException | RuntimeException ex) {
+      Counter.builder("dao.errors")
+        .tags("type", type, "backend", backend, "method", method)
+        .tag("exception", ex.getClass().getSimpleName())
+        .register(Metrics.globalRegistry)
+        .increment();
+      throw ex;
+    } finally {
+      timer(method).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private Timer timer(String method) {
+    return timers.computeIfAbsent(method, m -> Timer.builder("dao.calls")
+      .tags("type", type, "backend", backend, "method", m)
+      .publishPercentiles(0.5, 0.95, 0.99)
+      .publishPercentileHistogram()
+      .register(Metrics.globalRegistry));
+  }
+
+  private <T extends List<?>> T rows(String method, T result) {
+    if (result != null)
+      rows(method, result.size());
+    return result;
+  }
+
+  private int rows(String method, int count) {
+    rows.computeIfAbsent(method, m -> DistributionSummary.builder("dao.rows")
+      .tags("type", type, "backend", backend, "method", m)
+      .register(Metrics.globalRegistry))
+      .record(count);
+    return count;
+  }
+}
@@ -2,14 +2,31 @@ package com.kristina.ecom.dao;
 
 import java.io.IOException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+import org.bson.Document;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
 
 public class MongoDataSourceFactory {
   private static MongoDataSourceFactory instance = new MongoDataSourceFactory("db.properties");
 
   private Properties props;
+  private MongoClient client;
+  private boolean released;
 
   private  MongoDataSourceFactory(String fileName) {
     props = new Properties();
@@ -18,14 +35,82 @@ public class MongoDataSourceFactory {
     } catch (IOException ex) {
       ex.printStackTrace();
     }
+    Runtime.getRuntime().addShutdownHook(new Thread(this::release));
   }
 
   public static MongoDataSourceFactory getInstance() {
     return instance;
   }
 
-  public  MongoDatabase getDatabase() {
-    return MongoClients.create(props.getProperty("MONGODB_URL"))
-      .getDatabase(props.getProperty("MONGO_DB"));
+  // one client (and connection pool) for the whole process, created on first use.
+  // none after release(), the collections handed out so far belong to the closed one
+  public synchronized MongoClient getClient() {
+    if (released)
+      throw new IllegalStateException("MongoClient already released");
+    if (client == null)
+      client = MongoClients.create(settings());
+    return client;
+  }
+
+  public MongoDatabase getDatabase() {
+    return getClient().getDatabase(props.getProperty("MONGO_DB"));
+  }
+
+  public MongoCollection<Document> getCollection(String name) {
+    return getDatabase().getCollection(name);
+  }
+
+  // documents per getMore round trip when streaming a cursor
+  public int getBatchSize() {
+    return getInt("MONGO_CURSOR_BATCH_SIZE", 500);
+  }
+
+  public synchronized void release() {
+    released = true;
+    if (client != null) {
+      client.close();
+      client = null;
+    }
+  }
+
+  private MongoClientSettings settings() {
+    return MongoClientSettings.builder()
+      .applyConnectionString(new ConnectionString(props.getProperty("MONGODB_URL")))
+      .applyToConnectionPoolSettings(pool -> pool
+        .maxSize(getInt("MONGO_POOL_MAX_SIZE", 20))
+        .minSize(getInt("MONGO_POOL_MIN_SIZE", 0))
+        .maxWaitTime(getInt("MONGO_POOL_MAX_WAIT_MS", 5000), TimeUnit.MILLISECONDS)
+        .addConnectionPoolListener(new MongoMetricsConnectionPoolListener(Metrics.globalRegistry))
+        .addConnectionPoolListener(new CheckOutTimer()))
+      .applyToSocketSettings(socket -> socket
+        .connectTimeout(getInt("MONGO_CONNECT_TIMEOUT_MS", 5000), TimeUnit.MILLISECONDS)
+        .readTimeout(getInt("MONGO_SOCKET_TIMEOUT_MS", 10000), TimeUnit.MILLISECONDS))
+      .build();
+  }
+
+  private int getInt(String key, int defaultValue) {
+    String value = props.getProperty(key);
+    return value == null ? defaultValue : Integer.parseInt(value.trim());
+  }
+
+  // time spent waiting for a pooled connection, published next to the driver's pool gauges
+  private static class CheckOutTimer implements ConnectionPoolListener {
+    private final Timer checkOut = Timer.builder("mongodb.driver.pool.checkout")
+      .publishPercentiles(0.5, 0.95, 0.99)
+      .publishPercentileHistogram()
+      .register(Metrics.globalRegistry);
+    private final Counter failed = Counter.builder("mongodb.driver.pool.checkout.failed")
+      .register(Metrics.globalRegistry);
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+      checkOut.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+      checkOut.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+      failed.increment();
+    }
   }
 }
@@ -2,6 +2,8 @@ package com.kristina.ecom.dao;
 
 import com.kristina.ecom.cart.dao.ShoppingCartDAOMongo;
 import com.kristina.ecom.cart.domain.ShoppingCart;
+import com.kristina.ecom.oms.dao.OrderDAOMongo;
+import com.kristina.ecom.pms.dao.ProductDAOMongo;
 
 public class MongoFactory<K, V> implements AbstractFactory<K, V> {
   private static MongoFactory<String, ShoppingCart> instance = new MongoFactory();
@@ -13,6 +15,19 @@ public class MongoFactory<K, V> implements AbstractFactory<K, V> {
   }
 
   public DAO create(DAO.Type type) {
-    return new ShoppingCartDAOMongo();
+    if (type == null) {
+      return null;
+    }
+
+    switch (type) {
+      case SHOPPING_CART_DAO:
+        return new ShoppingCartDAOMongo();
+      case PRODUCT_DAO:
+        return new ProductDAOMongo();
+      case ORDER_DAO:
+        return new OrderDAOMongo();
+      default:
+      throw new IllegalArgumentException("no such type: " + type);
+    }
   }
 }
@@ -0,0 +1,65 @@
+package com.kristina.ecom.dao;
+
+import java.util.function.LongConsumer;
+
+// "this caller wrote recently": while the pin lasts its reads go to the primary instead of a
+// replica, so it sees its own writes however far the replicas lag.
+// the pin lives on the thread; ReadYourWritesFilter carries it from one web request to the
+// next in a cookie, and AsyncDAOAdapter hands it to the virtual thread of an async call
+public final class ReadYourWrites {
+  private static final ThreadLocal<Long> pinnedUntil = new ThreadLocal<>();
+  private static final ThreadLocal<LongConsumer> onWrite = new ThreadLocal<>();
+  private static volatile long window = 5000;
+
+  private ReadYourWrites() {}
+
+  // READ_YOUR_WRITES_MS, 0 turns the pinning off
+  static void setWindow(long millis) {
+    window = Math.max(0, millis);
+  }
+
+  public static long getWindow() {
+    return window;
+  }
+
+  // a write went to the primary, pin this caller's reads to it for the window
+  public static void wrote() {
+    if (window == 0)
+      return;
+    long until = System.currentTimeMillis() + window;
+    pinnedUntil.set(until);
+    LongConsumer listener = onWrite.get();
+    if (listener != null)
+      listener.accept(until);
+  }
+
+  public static boolean isPinned() {
+    Long until = pinnedUntil.get();
+    return until != null && until > System.currentTimeMillis();
+  }
+
+  // millis the pin runs to, 0 if there is none
+  public static long pinnedUntil() {
+    Long until = pinnedUntil.get();
+    return until == null ? 0 : until;
+  }
+
+  // starts a unit of work (a request, an async call) with the pin it came in with.
+  // listener, if not null, hears about every new pin so it can be passed on
+  public static void begin(long until, LongConsumer listener) {
+    if (until > System.currentTimeMillis())
+      pinnedUntil.set(until);
+    else
+      pinnedUntil.remove();
+    if (listener != null)
+      onWrite.set(listener);
+    else
+      onWrite.remove();
+  }
+
+  // pooled threads must not take the pin to the next request
+  public static void end() {
+    pinnedUntil.remove();
+    onWrite.remove();
+  }
+}
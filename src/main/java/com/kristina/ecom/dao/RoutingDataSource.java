@@ -0,0 +1,97 @@
+package com.kristina.ecom.dao;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+// the primary pool behind the writes, or the replicas behind the reads.
+// writes: every connection is on the primary, a committed write on it pins the caller's reads
+// to the primary too (TrackedConnection, ReadYourWrites).
+// reads: round robin over the replicas, the primary when there are none, when the caller is
+// pinned or when a replica can't hand out a connection
+public class RoutingDataSource implements DataSource {
+  private final DataSource primary;
+  private final List<DataSource> replicas;
+  private final boolean writes;
+  private final AtomicInteger next = new AtomicInteger();
+
+  private RoutingDataSource(DataSource primary, List<DataSource> replicas, boolean writes) {
+    this.primary = primary;
+    this.replicas = List.copyOf(replicas);
+    this.writes = writes;
+  }
+
+  public static RoutingDataSource writes(DataSource primary) {
+    return new RoutingDataSource(primary, List.of(), true);
+  }
+
+  public static RoutingDataSource reads(DataSource primary, List<DataSource> replicas) {
+    return new RoutingDataSource(primary, replicas, false);
+  }
+
+  public boolean hasReplicas() {
+    return !replicas.isEmpty();
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    if (writes)
+      return TrackedConnection.wrap(primary.getConnection());
+    if (replicas.isEmpty() || ReadYourWrites.isPinned())
+      return primary.getConnection();
+
+    DataSource replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+    try {
+      return replica.getConnection();
+    } catch (SQLException ex) {
+      // a replica that is down or saturated slows reads down, it doesn't fail them
+      return primary.getConnection();
+    }
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    throw new SQLFeatureNotSupportedException("the pools have their own credentials");
+  }
+
+  @Override
+  public PrintWriter getLogWriter() throws SQLException {
+    return primary.getLogWriter();
+  }
+
+  @Override
+  public void setLogWriter(PrintWriter out) throws SQLException {
+    primary.setLogWriter(out);
+  }
+
+  @Override
+  public void setLoginTimeout(int seconds) throws SQLException {
+    primary.setLoginTimeout(seconds);
+  }
+
+  @Override
+  public int getLoginTimeout() throws SQLException {
+    return primary.getLoginTimeout();
+  }
+
+  @Override
+  public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+    return primary.getParentLogger();
+  }
+
+  @Override
+  public <T> T unwrap(Class<T> iface) throws SQLException {
+    return iface.isInstance(this) ? iface.cast(this) : primary.unwrap(iface);
+  }
+
+  @Override
+  public boolean isWrapperFor(Class<?> iface) throws SQLException {
+    return iface.isInstance(this) || primary.isWrapperFor(iface);
+  }
+}
@@ -0,0 +1,27 @@
+package com.kristina.ecom.dao;
+
+import com.kristina.ecom.oms.dao.OrderDAOSharded;
+
+// SQL DAOs whose rows are spread over the ORDER_SHARD_URLS databases
+public class ShardedFactory implements AbstractFactory {
+  private static ShardedFactory instance = new ShardedFactory();
+
+  private ShardedFactory() {}
+
+  public static ShardedFactory getInstance() {
+    return instance;
+  }
+
+  public DAO create(DAO.Type type) {
+    if (type == null) {
+      return null;
+    }
+
+    switch (type) {
+      case ORDER_DAO:
+        return new OrderDAOSharded();
+      default:
+      throw new IllegalArgumentException("no such type: " + type);
+    }
+  }
+}
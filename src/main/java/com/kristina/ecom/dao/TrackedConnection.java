@@ -0,0 +1,161 @@
+package com.kristina.ecom.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// a primary connection that knows when it wrote something and when that became visible:
+// a statement that changed rows pins the caller's reads (ReadYourWrites) once it is committed,
+// right away in auto-commit. plain reads, FOR UPDATE included, don't pin.
+// afterCommit() lets a DAO keep in-memory state in step with the transaction
+public final class TrackedConnection implements InvocationHandler {
+  private final Connection conn;
+  private boolean wrote;
+  private final List<Runnable> commits = new ArrayList<>();
+  private final List<Runnable> rollbacks = new ArrayList<>();
+
+  private TrackedConnection(Connection conn) {
+    this.conn = conn;
+  }
+
+  public static Connection wrap(Connection conn) {
+    return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+      new Class<?>[] {Connection.class}, new TrackedConnection(conn));
+  }
+
+  // runs commit once the transaction of conn commits, rollback if it rolls back (or the connection
+  // is closed without a commit). right away when conn is in auto-commit or not a tracked connection
+  public static void afterCommit(Connection conn, Runnable commit, Runnable rollback) throws SQLException {
+    if (Proxy.isProxyClass(conn.getClass()) && Proxy.getInvocationHandler(conn) instanceof TrackedConnection tracked
+        && !conn.getAutoCommit()) {
+      tracked.commits.add(commit);
+      tracked.rollbacks.add(rollback);
+    } else {
+      commit.run();
+    }
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+    switch (method.getName()) {
+      case "commit":
+        call(method, args);
+        committed();
+        return null;
+      case "rollback":
+        call(method, args);
+        if (args == null || args.length == 0)
+          rolledBack();
+        return null;
+      case "setAutoCommit":
+        boolean wasOff = !conn.getAutoCommit();
+        call(method, args);
+        // switching auto-commit back on commits the open transaction
+        if (wasOff && (Boolean) args[0])
+          committed();
+        return null;
+      case "close":
+        if (!commits.isEmpty() || !rollbacks.isEmpty() || wrote)
+          rolledBack(); // the pool rolls back what wasn't committed
+        return call(method, args);
+      case "unwrap":
+        return ((Class<?>) args[0]).isInstance(conn) ? conn : conn.unwrap((Class<?>) args[0]);
+      case "isWrapperFor":
+        return ((Class<?>) args[0]).isInstance(conn) || conn.isWrapperFor((Class<?>) args[0]);
+      case "createStatement":
+      case "prepareStatement":
+      case "prepareCall":
+        return statement(method, (Statement) call(method, args));
+      default:
+        return call(method, args);
+    }
+  }
+
+  // the statements report the rows they changed
+  private Object statement(Method method, Statement statement) {
+    return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {method.getReturnType()},
+      (proxy, m, args) -> {
+        Object result = call(statement, m, args);
+        switch (m.getName()) {
+          case "executeUpdate":
+          case "executeLargeUpdate":
+            if (((Number) result).longValue() > 0)
+              written();
+            break;
+          case "executeBatch":
+            for (int rows : (int[]) result) {
+              if (rows != 0) { // SUCCESS_NO_INFO (-2) too
+                written();
+                break;
+              }
+            }
+            break;
+          case "executeLargeBatch":
+            for (long rows : (long[]) result) {
+              if (rows != 0) {
+                written();
+                break;
+              }
+            }
+            break;
+          case "execute":
+            if (!(Boolean) result && statement.getUpdateCount() > 0)
+              written();
+            break;
+          default:
+        }
+        return result;
+      });
+  }
+
+  private void written() throws SQLException {
+    if (conn.getAutoCommit())
+      ReadYourWrites.wrote();
+    else
+      wrote = true;
+  }
+
+  private void committed() {
+    if (wrote)
+      ReadYourWrites.wrote();
+    run(commits);
+    wrote = false;
+    commits.clear();
+    rollbacks.clear();
+  }
+
+  private void rolledBack() {
+    run(rollbacks);
+    wrote = false;
+    commits.clear();
+    rollbacks.clear();
+  }
+
+  private static void run(List<Runnable> actions) {
+    for (Runnable action : actions) {
+      try {
+        action.run();
+      } catch (RuntimeException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  private Object call(Method method, Object[] args) throws Throwable {
+    return call(conn, method, args);
+  }
+
+  private static Object call(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException ex) {
+      throw ex.getCause();
+    }
+  }
+}
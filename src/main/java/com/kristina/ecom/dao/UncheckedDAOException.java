@@ -0,0 +1,13 @@
+package com.kristina.ecom.dao;
+
+// thrown from inside a DAO stream, where a checked DAOException can't be
+public class UncheckedDAOException extends RuntimeException {
+  public UncheckedDAOException(DAOException ex) {
+    super(ex.getMessage(), ex);
+  }
+
+  @Override
+  public synchronized DAOException getCause() {
+    return (DAOException) super.getCause();
+  }
+}
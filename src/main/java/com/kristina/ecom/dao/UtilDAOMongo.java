@@ -1,7 +1,16 @@
 package com.kristina.ecom.dao;
 
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 import org.bson.Document;
 
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+
 import com.kristina.ecom.pms.domain.Product;
 
 public class UtilDAOMongo {
@@ -39,4 +48,12 @@ public class UtilDAOMongo {
   }
   return null;
   }
+
+  // documents are fetched from the server batchSize at a time, close the stream to kill the cursor
+  public static <T> Stream<T> stream(FindIterable<Document> documents, Function<Document, T> mapper) {
+    MongoCursor<Document> cursor = documents.batchSize(MongoDataSourceFactory.getInstance().getBatchSize()).cursor();
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+      .map(mapper)
+      .onClose(cursor::close);
+  }
 }
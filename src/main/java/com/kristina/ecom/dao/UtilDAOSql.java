@@ -0,0 +1,92 @@
+package com.kristina.ecom.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+public class UtilDAOSql {
+  // max number of keys bound in a single IN (...) list
+  public static final int CHUNK_SIZE = 500;
+
+  // "?, ?, ?" for an IN (...) list of n parameters
+  public static String placeholders(int n) {
+    StringBuilder sb = new StringBuilder(n * 3);
+    for (int i = 0; i < n; i++) {
+      if (i > 0)
+        sb.append(", ");
+      sb.append('?');
+    }
+    return sb.toString();
+  }
+
+  public static <T> List<List<T>> chunks(List<T> list) {
+    List<List<T>> chunks = new ArrayList<>();
+    for (int i = 0; i < list.size(); i += CHUNK_SIZE) {
+      chunks.add(list.subList(i, Math.min(i + CHUNK_SIZE, list.size())));
+    }
+    return chunks;
+  }
+
+  // rows affected by an executeBatch(), rewritten batches report SUCCESS_NO_INFO per statement
+  public static int rows(int[] counts) {
+    int rows = 0;
+    for (int count : counts)
+      rows += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+    return rows;
+  }
+
+  public interface RowMapper<T> {
+    T map(ResultSet rs) throws SQLException;
+  }
+
+  // forward-only, read-only result set with fetch size Integer.MIN_VALUE, so the MySQL driver
+  // hands rows over one at a time instead of buffering the whole table.
+  // the connection is held until the stream is closed
+  public static <T> Stream<T> stream(DataSource datasource, String query, RowMapper<T> mapper) throws DAOException {
+    Connection conn = null;
+    try {
+      conn = datasource.getConnection();
+      PreparedStatement stat = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+      stat.setFetchSize(Integer.MIN_VALUE);
+      ResultSet rs = stat.executeQuery();
+      Connection connection = conn;
+      return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+          try {
+            if (!rs.next())
+              return false;
+            action.accept(mapper.map(rs));
+            return true;
+          } catch (SQLException ex) {
+            throw new UncheckedDAOException(new DAOException("Error in DAO", ex));
+          }
+        }
+      }, false).onClose(() -> close(connection));
+    } catch (SQLException ex) {
+      close(conn);
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  private static void close(Connection conn) {
+    if (conn == null)
+      return;
+    try {
+      conn.close();
+    } catch (SQLException ex) {
+      ex.printStackTrace();
+    }
+  }
+}
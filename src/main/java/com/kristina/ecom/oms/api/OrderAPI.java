@@ -1,10 +1,17 @@
 package com.kristina.ecom.oms.api;
 
 import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.oms.dao.OrderHistoryStore;
+import com.kristina.ecom.oms.dao.OrderQuery;
 import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.OrderIndex;
+import com.kristina.ecom.oms.domain.SalesStats;
 import com.kristina.ecom.oms.service.OrderService;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -13,6 +20,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 
 @RestController
 @RequestMapping("ecom/order")
@@ -32,9 +40,75 @@ public class OrderAPI {
   //   this.service = service;
   // }
 
+  // keyset paged, call again with after=<id of the last order> for the next page,
+  // or after=<date|id> / <total|id> of the last order when sorted by DATE / TOTAL.
+  // from/to filter on the order date, hydrate=true loads the products of the whole page in one query
   @GetMapping(value="/getall", produces="application/json") 
-  public List<Order> getAll() {
-    return service.getAll();
+  public List<Order> getAll(@RequestParam(required=false) String after,
+                            @RequestParam(defaultValue="100") int limit,
+                            @RequestParam(defaultValue="false") boolean hydrate,
+                            @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                            @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                            @RequestParam(defaultValue="ID") OrderQuery.Sort sort,
+                            @RequestParam(defaultValue="false") boolean desc) {
+    return service.getPage(new OrderQuery(from, to, sort, desc, after, limit), hydrate);
+  }
+
+  // the k biggest (TOTAL), most recent (DATE) or newest id (ID) orders, from the in-memory order index
+  @GetMapping(value="/top", produces="application/json")
+  public List<OrderIndex.Entry> top(@RequestParam(defaultValue="TOTAL") OrderQuery.Sort by,
+                                    @RequestParam(defaultValue="10") int k) {
+    return service.top(by, k);
+  }
+
+  // e.g. ?min=500&max=2000&from=<a week ago>: min <= total <= max and from <= date < to, oldest first
+  @GetMapping(value="/range", produces="application/json")
+  public List<OrderIndex.Entry> range(@RequestParam(defaultValue="0") double min,
+                                      @RequestParam(defaultValue="" + Double.MAX_VALUE) double max,
+                                      @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                      @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                      @RequestParam(defaultValue="100") int limit) {
+    return service.range(min, max, from, to, limit);
+  }
+
+  // revenue per day, units per product and average order value, served from the sales rollups
+  @GetMapping(value="/stats", produces="application/json")
+  public SalesStats stats(@RequestParam(defaultValue="30") int days,
+                          @RequestParam(defaultValue="10") int top) {
+    return service.stats(Math.max(0, days), Math.max(0, top));
+  }
+
+  @PostMapping(value="/stats/rebuild")
+  public boolean rebuildStats() {
+    return service.rebuildStats();
+  }
+
+  // revenue per DAY/MONTH/YEAR, units per product and average order value over from <= date < to,
+  // scanned from the order history files, so only orders older than HISTORY_CLOSED_DAYS count
+  @GetMapping(value="/history", produces="application/json")
+  public SalesStats history(@RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                            @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                            @RequestParam(defaultValue="MONTH") OrderHistoryStore.Period period,
+                            @RequestParam(defaultValue="10") int top) {
+    return service.history(from, to, period, Math.max(0, top));
+  }
+
+  // the most ordered configurations (order descriptions) in the history
+  @GetMapping(value="/history/descriptions", produces="application/json")
+  public Map<String, Long> historyDescriptions(@RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                               @RequestParam(required=false) @DateTimeFormat(iso=DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                               @RequestParam(defaultValue="10") int top) {
+    return service.historyDescriptions(from, to, Math.max(0, top));
+  }
+
+  @PostMapping(value="/history/rebuild")
+  public int rebuildHistory() {
+    return service.rebuildHistory();
+  }
+
+  @PostMapping(value="/archive")
+  public int archive() {
+    return service.archive();
   }
 
   @GetMapping(value="/get/{id}", produces="application/json")
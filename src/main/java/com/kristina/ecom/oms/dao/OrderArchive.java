@@ -0,0 +1,182 @@
+package com.kristina.ecom.oms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
+import com.kristina.ecom.oms.domain.Order;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// moves orders older than ARCHIVE_AFTER_DAYS from porder/orderDetails to porder_archive/
+// orderDetails_archive, so the hot tables and their indexes stop growing with the history.
+// one short transaction per ARCHIVE_CHUNK_SIZE orders, oldest first: the chunk is locked with
+// SKIP LOCKED (an order being amended is left for the next run, two instances archiving at the
+// same time take different chunks), copied, and deleted by primary key.
+// the horizon (newest archived order) tells OrderDAOMySql when a read has to look at the archive
+public class OrderArchive {
+  private static OrderArchive instance;
+
+  private final DataSource datasource;
+  private final int days;
+  private final int chunk;
+  private final long pause;
+  private volatile boolean loaded;
+  private volatile LocalDateTime horizon;
+
+  public OrderArchive(DataSource datasource, int days, int chunk, long pause) {
+    this.datasource = datasource;
+    this.days = days;
+    this.chunk = Math.max(1, Math.min(chunk, UtilDAOSql.CHUNK_SIZE));
+    this.pause = pause;
+  }
+
+  public static synchronized OrderArchive getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(OrderArchive.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      instance = new OrderArchive(DataSourceFactory.instance().getDataSource(),
+        Integer.parseInt(props.getProperty("ARCHIVE_AFTER_DAYS", "0").trim()),
+        Integer.parseInt(props.getProperty("ARCHIVE_CHUNK_SIZE", "500").trim()),
+        Long.parseLong(props.getProperty("ARCHIVE_PAUSE_MS", "50").trim()));
+
+      long seconds = Long.parseLong(props.getProperty("ARCHIVE_INTERVAL_SECONDS", "3600").trim());
+      if (instance.days > 0 && seconds > 0) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "order-archive");
+          thread.setDaemon(true);
+          return thread;
+        });
+        OrderArchive archive = instance;
+        scheduler.scheduleWithFixedDelay(() -> {
+          try {
+            archive.archive();
+          } catch (DAOException ex) {
+            ex.printStackTrace();
+          }
+        }, seconds, seconds, TimeUnit.SECONDS);
+      }
+    }
+    return instance;
+  }
+
+  // archives everything older than the cutoff, returns the number of orders moved
+  public int archive() throws DAOException {
+    if (days <= 0)
+      return 0;
+
+    LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
+    int total = 0;
+    int moved;
+    do {
+      moved = archive(cutoff);
+      total += moved;
+      if (moved == chunk && pause > 0) {
+        // lets replication and the checkouts waiting on the tables catch up
+        try {
+          Thread.sleep(pause);
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } while (moved == chunk);
+
+    refresh();
+    return total;
+  }
+
+  // the date of the newest archived order, null while the archive is empty
+  public LocalDateTime horizon() throws DAOException {
+    if (!loaded)
+      refresh();
+    return horizon;
+  }
+
+  // whether orders from the archive can be on this page of the listing
+  public boolean reaches(OrderQuery query, List<Order> hot) throws DAOException {
+    LocalDateTime horizon = horizon();
+    if (horizon == null)
+      return false;
+    if (query.getFrom() != null && query.getFrom().isAfter(horizon))
+      return false;
+    // newest first: a full page that stops after the horizon comes before every archived order
+    if (query.getSort() == OrderQuery.Sort.DATE && query.isDescending() && hot.size() == query.getLimit()
+        && hot.get(hot.size() - 1).getDate().isAfter(horizon))
+      return false;
+    return true;
+  }
+
+  public void refresh() throws DAOException {
+    try (Connection conn = datasource.getConnection();
+         Statement stat = conn.createStatement();
+         ResultSet rs = stat.executeQuery("SELECT MAX(date_time) FROM porder_archive")) {
+      Timestamp newest = rs.next() ? rs.getTimestamp(1) : null;
+      horizon = newest == null ? null : newest.toLocalDateTime();
+      loaded = true;
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  // one chunk in one transaction
+  private int archive(LocalDateTime cutoff) throws DAOException {
+    String select = "SELECT id FROM porder WHERE date_time < ? ORDER BY date_time, id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        List<String> ids = new ArrayList<>();
+        try (PreparedStatement stat = conn.prepareStatement(select)) {
+          stat.setTimestamp(1, Timestamp.valueOf(cutoff));
+          stat.setInt(2, chunk);
+          try (ResultSet rs = stat.executeQuery()) {
+            while (rs.next())
+              ids.add(rs.getString(1));
+          }
+        }
+
+        if (!ids.isEmpty()) {
+          String in = " IN (" + UtilDAOSql.placeholders(ids.size()) + ")";
+          execute(conn, "INSERT INTO porder_archive SELECT * FROM porder WHERE id" + in, ids);
+          execute(conn, "INSERT INTO orderDetails_archive SELECT * FROM orderDetails WHERE oid" + in, ids);
+          execute(conn, "DELETE FROM orderDetails WHERE oid" + in, ids);
+          execute(conn, "DELETE FROM porder WHERE id" + in, ids);
+        }
+        conn.commit();
+        return ids.size();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  private static void execute(Connection conn, String query, List<String> ids) throws SQLException {
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      for (int i = 0; i < ids.size(); i++)
+        stat.setString(i + 1, ids.get(i));
+      stat.executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,13 @@
+package com.kristina.ecom.oms.dao;
+
+import java.util.List;
+
+import com.kristina.ecom.dao.DAO;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.oms.domain.Order;
+
+// order listing beyond id paging, implemented by every order backend
+public interface OrderDAO extends DAO<String, Order> {
+  // one page filtered and sorted as asked, the products are not loaded
+  List<Order> readPage(OrderQuery query) throws DAOException;
+}
@@ -1,9 +1,22 @@
 package com.kristina.ecom.oms.dao;
 
+import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.or;
+import static com.mongodb.client.model.Sorts.ascending;
+import static com.mongodb.client.model.Sorts.descending;
+import static com.mongodb.client.model.Sorts.orderBy;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
@@ -11,22 +24,35 @@ import com.mongodb.MongoException;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.result.InsertManyResult;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.InsertOneResult;
 import com.mongodb.client.result.UpdateResult;
-import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.MongoDataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOMongo;
 import com.kristina.ecom.oms.domain.Order;
 import com.kristina.ecom.pms.domain.Product;
 
-public class OrderDAOMongo  implements DAO<String, Order> {
+public class OrderDAOMongo  implements OrderDAO {
+  // the listing indexes are created once per process
+  private static final AtomicBoolean indexed = new AtomicBoolean();
+
   private MongoDataSourceFactory dataSourceFactory;
   private MongoCollection<Document> collection;
 
   public OrderDAOMongo() {
     this.dataSourceFactory = MongoDataSourceFactory.getInstance();
-    this.collection = dataSourceFactory.getDatabase().getCollection("orders");
+    this.collection = dataSourceFactory.getCollection("orders");
+    if (indexed.compareAndSet(false, true)) {
+      // newest first, _id breaks ties for the keyset cursor
+      collection.createIndex(Indexes.compoundIndex(Indexes.descending("date"), Indexes.descending("_id")));
+      collection.createIndex(Indexes.compoundIndex(Indexes.descending("total"), Indexes.descending("_id")));
+    }
   }
 
   @Override
@@ -57,6 +83,63 @@ public class OrderDAOMongo  implements DAO<String, Order> {
     return orders;
   }
 
+  @Override
+  public List<Order> readPage(String after, int limit) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    if (after != null && !ObjectId.isValid(after))
+      return orders;
+    Bson query = after == null ? new Document() : gt("_id", new ObjectId(after));
+    try {
+      for (Document document : collection.find(query).sort(ascending("_id")).limit(limit))
+        orders.add(toOrder(document));
+    } catch (MongoException ex) {
+      throw new DAOException("Order read error", ex);
+    }
+    return orders;
+  }
+
+  @Override
+  public List<Order> readPage(OrderQuery query) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    List<Bson> filters = new ArrayList<>();
+    String field = query.getSort() == OrderQuery.Sort.DATE ? "date"
+                 : query.getSort() == OrderQuery.Sort.TOTAL ? "total" : null;
+    boolean desc = query.isDescending();
+    // no order comes after a cursor that isn't one
+    if (query.isMalformed() || (query.getAfter() != null && !ObjectId.isValid(query.afterId())))
+      return orders;
+
+    if (query.getFrom() != null)
+      filters.add(gte("date", toDate(query.getFrom())));
+    if (query.getTo() != null)
+      filters.add(lt("date", toDate(query.getTo())));
+    if (query.getAfter() != null) {
+      ObjectId id = new ObjectId(query.afterId());
+      Bson afterId = desc ? lt("_id", id) : gt("_id", id);
+      if (field == null) {
+        filters.add(afterId);
+      } else {
+        Object value = field.equals("total") ? (Object) query.afterTotal() : toDate(query.afterDate());
+        filters.add(or(desc ? lt(field, value) : gt(field, value), and(eq(field, value), afterId)));
+      }
+    }
+
+    Bson idSort = desc ? descending("_id") : ascending("_id");
+    Bson sort = field == null ? idSort : orderBy(desc ? descending(field) : ascending(field), idSort);
+    try {
+      for (Document document : collection.find(filters.isEmpty() ? new Document() : and(filters)).sort(sort).limit(query.getLimit()))
+        orders.add(toOrder(document));
+    } catch (MongoException ex) {
+      throw new DAOException("Order read error", ex);
+    }
+    return orders;
+  }
+
+  @Override
+  public Stream<Order> stream() throws DAOException {
+    return UtilDAOMongo.stream(collection.find(), this::toOrder);
+  }
+
   @Override
   public Order read(String id) throws DAOException {
     if (id == null) {
@@ -94,6 +177,74 @@ public class OrderDAOMongo  implements DAO<String, Order> {
     return (int) result.getDeletedCount();
   }
 
+  @Override
+  public List<Order> createAll(List<Order> orders) throws DAOException {
+    if (orders.isEmpty())
+      return orders;
+
+    try {
+      List<Document> documents = new ArrayList<>();
+      for (Order order : orders)
+        documents.add(toDocument(order));
+      InsertManyResult result = collection.insertMany(documents);
+      result.getInsertedIds().forEach((i, id) -> orders.get(i).setId(id.asObjectId().getValue().toHexString()));
+      return orders;
+    } catch (MongoException ex) {
+      throw new DAOException("Order creation error", ex);
+    }
+  }
+
+  @Override
+  public List<Order> readMany(List<String> ids) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    try {
+      for (Document document : collection.find(in("_id", toObjectIds(ids))))
+        orders.add(toOrder(document));
+    } catch (MongoException ex) {
+      throw new DAOException("Order read error", ex);
+    }
+    return orders;
+  }
+
+  @Override
+  public int updateAll(List<Order> orders) throws DAOException {
+    if (orders.isEmpty())
+      return 0;
+
+    List<WriteModel<Document>> updates = new ArrayList<>();
+    for (Order order : orders)
+      updates.add(new ReplaceOneModel<>(eq("_id", new ObjectId(order.getId())), toDocument(order)));
+
+    try {
+      BulkWriteResult result = collection.bulkWrite(updates);
+      return result.getModifiedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Order update error", ex);
+    }
+  }
+
+  @Override
+  public int deleteAll(List<String> ids) throws DAOException {
+    try {
+      DeleteResult result = collection.deleteMany(in("_id", toObjectIds(ids)));
+      return (int) result.getDeletedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Order delete error", ex);
+    }
+  }
+
+  private List<ObjectId> toObjectIds(List<String> ids) {
+    List<ObjectId> objectIds = new ArrayList<>();
+    for (String id : ids)
+      objectIds.add(new ObjectId(id));
+    return objectIds;
+  }
+
+  // same zone toOrder reads the dates back with
+  private Date toDate(LocalDateTime date) {
+    return Date.from(date.atZone(ZoneId.systemDefault()).toInstant());
+  }
+
   private Order toOrder(Document document) {
     if (document == null)
       return null;
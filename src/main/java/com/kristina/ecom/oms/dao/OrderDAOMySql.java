@@ -2,38 +2,55 @@ package com.kristina.ecom.oms.dao;
 
 import javax.sql.DataSource;
 
-import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
 import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.OrderDiff;
+import com.kristina.ecom.pms.dao.InsufficientStockException;
+import com.kristina.ecom.pms.dao.InventoryDAOMySql;
 import com.kristina.ecom.pms.domain.Product;
 
 import java.util.List;
+import java.util.Map;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.stream.Stream;
 import java.sql.PreparedStatement;
 import java.sql.Timestamp;
+import java.time.LocalDateTime;
 
-public class OrderDAOMySql implements DAO<String, Order> {
+public class OrderDAOMySql implements OrderDAO {
 
   private DataSource datasource;
+  private DataSource replica; // reads, see DataSourceFactory.getReadDataSource
+  private InventoryDAOMySql inventory;
+  private OrderArchive archive;
+  private Outbox outbox;
 
   public OrderDAOMySql() {
     this.datasource = DataSourceFactory.instance().getDataSource();
+    this.replica = DataSourceFactory.instance().getReadDataSource();
+    this.inventory = new InventoryDAOMySql();
+    this.archive = OrderArchive.getInstance();
+    this.outbox = Outbox.getInstance();
   }
 
   // add a new product to existing order
   public int updateProductsInOrder(Order order, Product product) throws DAOException {
-    int rows =0;
-    try {
-    Connection conn = datasource.getConnection();
     String query = "INSERT INTO orderDetails VALUES(?, ?, ?)";
-    
-    PreparedStatement stat = conn.prepareStatement(query);
-    stat = conn.prepareStatement(query);
+    int rows = 0;
+
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
       stat.setString(1, order.getId());
       stat.setInt(2, product.getId());
       stat.setInt(3, product.getQuantity());
@@ -45,207 +62,708 @@ public class OrderDAOMySql implements DAO<String, Order> {
     return rows;
   }
 
-  @Override 
+  // the stock of every line (base computer included) is reserved in the same transaction,
+  // an InsufficientStockException leaves both the stock and the order tables untouched
+  @Override
   public Order create(Order order) throws DAOException {
-  
-      String query = "INSERT INTO porder VALUES(? ,?, ?, ?)";
-      String query2 = "INSERT INTO orderDetails VALUES(?, ?, ?)";
+    String query = "INSERT INTO porder VALUES(? ,?, ?, ?)";
+    String query2 = "INSERT INTO orderDetails VALUES(?, ?, ?)";
 
-      try {
-      Connection conn = datasource.getConnection();
+    try (Connection conn = datasource.getConnection()) {
       conn.setAutoCommit(false);
-      PreparedStatement stat = conn.prepareStatement(query);
+      try (PreparedStatement stat = conn.prepareStatement(query);
+           PreparedStatement stat2 = conn.prepareStatement(query2)) {
+        Map<Integer, Integer> lines = order.lines();
+        List<Integer> failed = inventory.reserve(conn, lines);
+        if (!failed.isEmpty()) {
+          conn.rollback();
+          throw new InsufficientStockException(failed);
+        }
 
-      stat.setString(1, order.getId());
-      stat.setString(2, order.getDescription());
-      // stat.setString(2, "Test from today");
-      stat.setFloat(3, (float) order.getTotal());
-      stat.setTimestamp(4,  Timestamp.valueOf(order.getDate()));
-      stat.executeUpdate();
-
-      stat = conn.prepareStatement(query2);
-      List<Product> products = order.getProducts();
-      Product base = order.getComputer().getBase();
-      products.add(base);
-      for (Product product : products) {
         stat.setString(1, order.getId());
-        stat.setInt(2, product.getId());
-        stat.setInt(3, product.getQuantity());
+        stat.setString(2, order.getDescription());
+        stat.setFloat(3, (float) order.getTotal());
+        stat.setTimestamp(4,  Timestamp.valueOf(order.getDate()));
         stat.executeUpdate();
-      }
-      products.remove(base);
 
-      conn.commit();
-      conn.close();
+        addLines(stat2, order.getId(), lines);
+        stat2.executeBatch();
+
+        SalesRollup.Delta sales = new SalesRollup.Delta().add(order, lines);
+        sales(conn, sales);
+        conn.commit();
       } catch (SQLException ex) {
-        ex.printStackTrace();
-        throw new DAOException("Error in DAO", ex);
+        conn.rollback();
+        throw ex;
       }
-      return order;
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
+    return order;
+  }
 
-    @Override public List<Order> readAll() throws DAOException {
-      List<Order> orders = new ArrayList<>();
-      try {
-      Connection connection = datasource.getConnection();
-      String query = "SELECT * FROM porder";
-      Statement stat = connection.createStatement();
-      ResultSet rs = stat.executeQuery(query);
+  @Override public List<Order> readAll() throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    String query = "SELECT * FROM porder";
+
+    try (Connection connection = replica.getConnection();
+         Statement stat = connection.createStatement();
+         ResultSet rs = stat.executeQuery(query)) {
       while (rs.next()) {
-        Order order = new Order(rs.getString(1), 
-                                rs.getTimestamp(4).toLocalDateTime(),
-                                 new ArrayList<Product>(),
-                                 rs.getString(2),
-                                 rs.getDouble(3)
-                              );
-        orders.add(order);
+        orders.add(toOrder(rs));
       }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return orders;
+  }
 
-      connection.close();
-      } catch (SQLException ex) {
-        throw new DAOException("Error in DAO", ex);
+  // orders only, like readAll the products are not loaded
+  @Override
+  public List<Order> readPage(String after, int limit) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    String query = after == null
+      ? "SELECT * FROM porder ORDER BY id LIMIT ?"
+      : "SELECT * FROM porder WHERE id > ? ORDER BY id LIMIT ?";
+
+    try (Connection conn = replica.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      int i = 1;
+      if (after != null)
+        stat.setString(i++, after);
+      stat.setInt(i, limit);
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next())
+          orders.add(toOrder(rs));
       }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return orders;
+  }
+
+  // keyset page over the (date_time, id) or (total, id) index, see OrderQuery. the archive is
+  // only queried when the page can reach back that far, see OrderArchive.reaches
+  @Override
+  public List<Order> readPage(OrderQuery query) throws DAOException {
+    List<Order> orders = page(replica, query, "porder");
+    if (!archive.reaches(query, orders))
       return orders;
+
+    orders.addAll(page(replica, query, "porder_archive"));
+    orders.sort(query.comparator());
+    return orders.size() > query.getLimit() ? new ArrayList<>(orders.subList(0, query.getLimit())) : orders;
+  }
+
+  // every order write changes the same rollup rows (today, the base computer), they are not
+  // locked in here: the delta goes to the outbox and OutboxDispatcher adds it after the commit
+  private void sales(Connection conn, SalesRollup.Delta sales) throws SQLException {
+    if (!sales.isEmpty())
+      outbox.append(conn, List.of(Outbox.Event.sales(sales)));
+  }
+
+  // also run on every shard by OrderDAOSharded
+  static List<Order> page(DataSource source, OrderQuery query) throws DAOException {
+    return page(source, query, "porder");
+  }
+
+  private static List<Order> page(DataSource source, OrderQuery query, String table) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    if (query.isMalformed())
+      return orders;
+    List<Object> params = new ArrayList<>();
+    List<String> where = new ArrayList<>();
+    String column = query.getSort() == OrderQuery.Sort.DATE ? "date_time"
+                  : query.getSort() == OrderQuery.Sort.TOTAL ? "total" : null;
+    String op = query.isDescending() ? "<" : ">";
+    String dir = query.isDescending() ? " DESC" : "";
+
+    if (query.getFrom() != null) {
+      where.add("date_time >= ?");
+      params.add(Timestamp.valueOf(query.getFrom()));
+    }
+    if (query.getTo() != null) {
+      where.add("date_time < ?");
+      params.add(Timestamp.valueOf(query.getTo()));
+    }
+    if (query.getAfter() != null) {
+      if (column == null) {
+        where.add("id " + op + " ?");
+      } else {
+        // total is a FLOAT column, the cursor value is narrowed the same way so '=' matches
+        Object value = column.equals("total") ? (Object) (double) (float) query.afterTotal() : Timestamp.valueOf(query.afterDate());
+        where.add("(" + column + " " + op + " ? OR (" + column + " = ? AND id " + op + " ?))");
+        params.add(value);
+        params.add(value);
+      }
+      params.add(query.afterId());
+    }
+
+    String sql = "SELECT * FROM " + table +
+                 (where.isEmpty() ? "" : " WHERE " + String.join(" AND ", where)) +
+                 " ORDER BY " + (column == null ? "" : column + dir + ", ") + "id" + dir +
+                 " LIMIT ?";
+    params.add(query.getLimit());
+
+    try (Connection conn = source.getConnection();
+         PreparedStatement stat = conn.prepareStatement(sql)) {
+      for (int i = 0; i < params.size(); i++)
+        stat.setObject(i + 1, params.get(i));
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next())
+          orders.add(toOrder(rs));
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
+    return orders;
+  }
+
+  @Override
+  public Stream<Order> stream() throws DAOException {
+    return UtilDAOSql.stream(replica, "SELECT * FROM porder", OrderDAOMySql::toOrder);
+  }
+
+  @Override
+  public Order read(String id) throws DAOException {
+    Order order = null;
+    String orderQuery = "SELECT * FROM porder WHERE id = ?";
+    String productsQuery = "SELECT product.id, product.name, product.price, orderDetails.quantity " +
+                           "FROM orderDetails " +
+                           "JOIN product ON orderDetails.pid = product.id " +
+                           "WHERE orderDetails.oid = ? AND product.type <> 'Computer'";
 
-    @Override
-    public Order read(String id) throws DAOException {
-        Order order = null;
-        String orderQuery = "SELECT * FROM porder WHERE id = ?";
-        String productsQuery = "SELECT product.id, product.name, product.price, orderDetails.quantity " +
-                               "FROM orderDetails " +
-                               "JOIN product ON orderDetails.pid = product.id " +
-                               "WHERE orderDetails.oid = ?";
-        try {
-        Connection conn = datasource.getConnection();
-          try {
-              conn.setAutoCommit(false);
-              PreparedStatement orderStmt = conn.prepareStatement(orderQuery);
-              orderStmt.setString(1, id);
-              ResultSet orderRs = orderStmt.executeQuery();
-              
-              if (orderRs.next()) {
-                  order = new Order(
-                      orderRs.getString("id"),
-                      orderRs.getTimestamp("date_time").toLocalDateTime(), 
-                      new ArrayList<>(),
-                      orderRs.getString("description"),
-                      orderRs.getDouble("total")
-                  );
-              }
-              // first create the list of products and then create the order and pass the list of product 
-              if (order != null) {
-                  PreparedStatement productsStmt = conn.prepareStatement(productsQuery);
-                  productsStmt.setString(1, id);
-                  ResultSet productsRs = productsStmt.executeQuery();
-                  
-                  List<Product> products = new ArrayList<>();
-                  while (productsRs.next()) {
-                      Product product = new Product(
-                          productsRs.getInt("id"), 
-                          productsRs.getString("name"), 
-                          productsRs.getFloat("price"), 
-                          productsRs.getInt("quantity")
-                      );
-                      products.add(product);
-                  }
-                  order.setProducts(products);
-              }
-      
-              conn.commit();
-          } catch (SQLException e) {
-              conn.rollback();
-              throw e;
-          } finally {
-              conn.close();
+    try (Connection conn = replica.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement orderStmt = conn.prepareStatement(orderQuery);
+           PreparedStatement productsStmt = conn.prepareStatement(productsQuery)) {
+        orderStmt.setString(1, id);
+        try (ResultSet orderRs = orderStmt.executeQuery()) {
+          if (orderRs.next()) {
+            order = new Order(
+                orderRs.getString("id"),
+                orderRs.getTimestamp("date_time").toLocalDateTime(),
+                new ArrayList<>(),
+                orderRs.getString("description"),
+                orderRs.getDouble("total")
+            );
+          }
+        }
+        // first create the list of products and then create the order and pass the list of product
+        if (order != null) {
+          productsStmt.setString(1, id);
+          List<Product> products = new ArrayList<>();
+          try (ResultSet productsRs = productsStmt.executeQuery()) {
+            while (productsRs.next()) {
+              Product product = new Product(
+                  productsRs.getInt("id"),
+                  productsRs.getString("name"),
+                  productsRs.getFloat("price"),
+                  productsRs.getInt("quantity")
+              );
+              products.add(product);
+            }
           }
-        } catch (SQLException ex) {
-          throw new DAOException("Error in DAO", ex);
+          order.setProducts(products);
         }
-        
-        return order;
+
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+
+      // not in the hot tables, maybe archived
+      if (order == null && archive.horizon() != null) {
+        List<Order> archived = select(conn, List.of(id), "porder_archive");
+        hydrate(conn, archived, "orderDetails_archive");
+        order = archived.isEmpty() ? null : archived.get(0);
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
-    
-    @Override 
-    public int delete(String id) throws DAOException {
-      int rows = 0;
-      try {
-      Connection conn = datasource.getConnection();
+
+    return order;
+  }
+
+  @Override
+  public int delete(String id) throws DAOException {
+    String query1 = "DELETE FROM orderDetails WHERE oid=?";
+    String query2 = "DELETE FROM porder WHERE id=?";
+    int rows = 0;
+
+    try (Connection conn = datasource.getConnection()) {
       conn.setAutoCommit(false);
-      String query1 = "DELETE FROM orderDetails WHERE oid=" + id;
+      try (PreparedStatement stat1 = conn.prepareStatement(query1);
+           PreparedStatement stat2 = conn.prepareStatement(query2)) {
+        SalesRollup.Delta sales = replaced(stored(conn, List.of(id)), lines(conn, List.of(id)), List.of());
+        stat1.setString(1, id);
+        rows = stat1.executeUpdate();
+        stat2.setString(1, id);
+        rows += stat2.executeUpdate();
 
-      Statement stat = conn.createStatement();
-      int rows1 = stat.executeUpdate(query1);
+        sales(conn, sales);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return rows;
+  }
 
-      rows = rows1;
-      String query2 = "DELETE FROM porder WHERE id=" + id;
-      int rows2 = stat.executeUpdate(query2);
-      rows += rows2;
+  // this delete is for specific item in the orderDetails table
+  public int delete(String oid, int pid) throws DAOException {
+    String query = "DELETE FROM orderDetails WHERE oid=? AND pid=?";
+    int rows = 0;
 
-      conn.commit();
-      conn.close();
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setString(1, oid);
+      stat.setInt(2, pid);
+      rows = stat.executeUpdate();
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return rows;
+  }
+
+  // only the lines that changed are written, see apply()
+  public int update(Order order) throws DAOException {
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        Map<String, Order> stored = stored(conn, List.of(order.getId()));
+        Map<Integer, Integer> before = lines(conn, order.getId());
+        updateOrders(conn, List.of(order));
+        apply(conn, Map.of(order.getId(), new OrderDiff(before, order.lines())));
+
+        SalesRollup.Delta sales = replaced(stored, Map.of(order.getId(), before), List.of(order));
+        sales(conn, sales);
+        conn.commit();
       } catch (SQLException ex) {
-        throw new DAOException("Error in DAO", ex);
+        conn.rollback();
+        throw ex;
       }
-      return rows;
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return 1;
+  }
+
+
+  @Override
+  public List<Order> createAll(List<Order> orders) throws DAOException {
+    return insert(orders, null);
+  }
+
+  // a checkout that only pays for its own commit: the sales delta, the product cache eviction
+  // and the caller's events (the cart completion) go to the outbox in the same transaction
+  // and are run by OutboxDispatcher
+  public List<Order> createAll(List<Order> orders, List<Outbox.Event> events) throws DAOException {
+    return insert(orders, events);
+  }
+
+  private List<Order> insert(List<Order> orders, List<Outbox.Event> events) throws DAOException {
+    String query = "INSERT INTO porder VALUES(? ,?, ?, ?)";
+    String query2 = "INSERT INTO orderDetails VALUES(?, ?, ?)";
+    SalesRollup.Delta sales = new SalesRollup.Delta();
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement(query);
+           PreparedStatement stat2 = conn.prepareStatement(query2)) {
+        Map<Integer, Integer> total = new LinkedHashMap<>();
+        for (Order order : orders)
+          order.lines().forEach((pid, quantity) -> total.merge(pid, quantity, Integer::sum));
+        List<Integer> failed = inventory.reserve(conn, total);
+        if (!failed.isEmpty()) {
+          conn.rollback();
+          throw new InsufficientStockException(failed);
+        }
+
+        for (Order order : orders) {
+          stat.setString(1, order.getId());
+          stat.setString(2, order.getDescription());
+          stat.setFloat(3, (float) order.getTotal());
+          stat.setTimestamp(4, Timestamp.valueOf(order.getDate()));
+          stat.addBatch();
+
+          Map<Integer, Integer> lines = order.lines();
+          addLines(stat2, order.getId(), lines);
+          sales.add(order, lines);
+        }
+        stat.executeBatch();
+        stat2.executeBatch();
+        List<Outbox.Event> after = new ArrayList<>();
+        after.add(Outbox.Event.sales(sales));
+        if (events != null) {
+          after.add(Outbox.Event.evictStock(total.keySet()));
+          after.addAll(events);
+        }
+        outbox.append(conn, after);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLIntegrityConstraintViolationException ex) {
+      // the unique key of one of the events, e.g. the same cart checked out twice at once
+      throw new DAOException("Already done: " + ex.getMessage(), ex);
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
+    return orders;
+  }
+
+  @Override
+  public List<Order> readMany(List<String> ids) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    if (ids.isEmpty())
+      return orders;
+
+    try (Connection conn = replica.getConnection()) {
+      orders = select(conn, ids, "porder");
+      hydrate(conn, orders);
 
-    // this delete is for specific item in the orderDetails table
-    public int delete(String oid, int pid) throws DAOException {
-      int rows = 0;
+      // the ids that weren't in the hot tables
+      if (orders.size() < new HashSet<>(ids).size() && archive.horizon() != null) {
+        Set<String> missing = new HashSet<>(ids);
+        for (Order order : orders)
+          missing.remove(order.getId());
+        List<Order> archived = select(conn, new ArrayList<>(missing), "porder_archive");
+        hydrate(conn, archived, "orderDetails_archive");
+        orders.addAll(archived);
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return orders;
+  }
+
+  // fills in the products of a page of orders (readAll/readPage/stream leave them empty)
+  // with one orderDetails JOIN product query per chunk of ids instead of a read() per order
+  public List<Order> hydrate(List<Order> orders) throws DAOException {
+    if (orders.isEmpty())
+      return orders;
+
+    try (Connection conn = replica.getConnection()) {
+      hydrate(conn, orders);
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return orders;
+  }
+
+
+  @Override
+  public int updateAll(List<Order> orders) throws DAOException {
+    if (orders.isEmpty())
+      return 0;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
       try {
-      Connection conn = datasource.getConnection();
-      String query = "DELETE FROM orderDetails WHERE oid=? AND pid=?";
-      
-      // Order details
-      PreparedStatement stat = conn.prepareStatement(query);
-      stat.setString(1, oid); 
-      stat.setInt(2, pid); 
-      rows = stat.executeUpdate();
+        List<String> ids = new ArrayList<>();
+        for (Order order : orders)
+          ids.add(order.getId());
+        Map<String, Order> stored = stored(conn, ids);
+        Map<String, Map<Integer, Integer>> before = lines(conn, ids);
+        updateOrders(conn, orders);
 
-      conn.close();
+        Map<String, OrderDiff> diffs = new LinkedHashMap<>();
+        for (Order order : orders)
+          diffs.put(order.getId(), new OrderDiff(before.getOrDefault(order.getId(), Map.of()), order.lines()));
+        apply(conn, diffs);
+
+        SalesRollup.Delta sales = replaced(stored, before, orders);
+        sales(conn, sales);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
+    return orders.size();
+  }
+
+
+  @Override
+  public int deleteAll(List<String> ids) throws DAOException {
+    int rows = 0;
+    if (ids.isEmpty())
       return rows;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        SalesRollup.Delta sales = replaced(stored(conn, ids), lines(conn, ids), List.of());
+        for (List<String> chunk : UtilDAOSql.chunks(ids)) {
+          String in = UtilDAOSql.placeholders(chunk.size());
+          try (PreparedStatement stat1 = conn.prepareStatement("DELETE FROM orderDetails WHERE oid IN (" + in + ")");
+               PreparedStatement stat2 = conn.prepareStatement("DELETE FROM porder WHERE id IN (" + in + ")")) {
+            for (int i = 0; i < chunk.size(); i++) {
+              stat1.setString(i + 1, chunk.get(i));
+              stat2.setString(i + 1, chunk.get(i));
+            }
+            rows += stat1.executeUpdate();
+            rows += stat2.executeUpdate();
+          }
+        }
+        sales(conn, sales);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
+    return rows;
+  }
 
-  public int update(Order order) throws DAOException {
-    String orderQuery = "UPDATE porder SET description=?, total=?, date_time=? WHERE id=?";
-    String deleteProductsQuery = "DELETE FROM orderDetails WHERE oid=?";
-    String insertProductsQuery = "INSERT INTO orderDetails VALUES(?, ?, ?)";
-
-    try {
-    Connection conn = datasource.getConnection();
-    conn.setAutoCommit(false); // using multiple queries
-
-    // Update order in order table
-    PreparedStatement stat = conn.prepareStatement(orderQuery);
-    stat.setString(1,order.getDescription());
-    stat.setFloat(2, (float) order.getTotal());
-    stat.setTimestamp(3, Timestamp.valueOf(order.getDate()));
-    stat.setString(4, order.getId());
-    stat.executeUpdate();
-
-    // delete all products for this order from orderDetails table
-    stat = conn.prepareStatement(deleteProductsQuery);
-    stat.setString(1,order.getId());
-    stat.executeUpdate();
-
-    // re-insert the latest products  belonging to this order into orderDetails table 
-    stat = conn.prepareStatement(insertProductsQuery);
-    for (Product product : order.getProducts()) {
-      stat.setString(1, order.getId());
-      stat.setInt(2, product.getId());
-      stat.setInt(3, product.getQuantity());
-      stat.executeUpdate();
+  // puts the stock back and deletes the order in one transaction
+  public int cancel(String id) throws DAOException {
+    int rows = 0;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat1 = conn.prepareStatement("DELETE FROM orderDetails WHERE oid=?");
+           PreparedStatement stat2 = conn.prepareStatement("DELETE FROM porder WHERE id=?")) {
+        SalesRollup.Delta sales = replaced(stored(conn, List.of(id)), lines(conn, List.of(id)), List.of());
+        inventory.restock(conn, id);
+        stat1.setString(1, id);
+        rows = stat1.executeUpdate();
+        stat2.setString(1, id);
+        rows += stat2.executeUpdate();
+
+        sales(conn, sales);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
     }
+    return rows;
+  }
+
+  // update() plus the stock: the old lines go back from orderDetails, the new ones are reserved,
+  // all or nothing
+  public int amend(Order order) throws DAOException {
 
-    conn.commit();
-    conn.close();
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        // the stored order is locked, a concurrent amend of the same order waits here
+        Map<String, Order> stored = stored(conn, List.of(order.getId()));
+        Map<Integer, Integer> before = lines(conn, order.getId());
+        OrderDiff diff = new OrderDiff(before, order.lines());
+        List<Integer> failed = inventory.reserve(conn, diff.getDelta());
+        if (!failed.isEmpty()) {
+          conn.rollback();
+          throw new InsufficientStockException(failed);
+        }
+
+        updateOrders(conn, List.of(order));
+        apply(conn, Map.of(order.getId(), diff));
+
+        SalesRollup.Delta sales = replaced(stored, Map.of(order.getId(), before), List.of(order));
+        sales(conn, sales);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
     return 1;
   }
+
+
+  // one pass over the orderDetails rows joined with product (one row per product, the base computer
+  // included), then the same for the orders of the page that reached the archive, from orderDetails_archive
+  private void hydrate(Connection conn, List<Order> orders) throws SQLException, DAOException {
+    hydrate(conn, orders, "orderDetails");
+
+    LocalDateTime horizon = archive.horizon();
+    if (horizon == null)
+      return;
+    List<Order> archived = new ArrayList<>();
+    for (Order order : orders) {
+      if (order.getProducts().isEmpty() && !order.getDate().isAfter(horizon))
+        archived.add(order);
+    }
+    if (!archived.isEmpty())
+      hydrate(conn, archived, "orderDetails_archive");
+  }
+
+  private static void hydrate(Connection conn, List<Order> orders, String details) throws SQLException {
+    Map<String, Order> byId = new HashMap<>();
+    for (Order order : orders) {
+      order.setProducts(new ArrayList<>());
+      byId.put(order.getId(), order);
+    }
+    // every line gets its own Product, only the immutable name is shared between orders
+    Map<Integer, String> names = new HashMap<>();
+
+    for (List<String> chunk : UtilDAOSql.chunks(new ArrayList<>(byId.keySet()))) {
+      String query = "SELECT d.oid, product.id, product.name, product.price, d.quantity " +
+                     "FROM " + details + " d " +
+                     "JOIN product ON d.pid = product.id " +
+                     "WHERE d.oid IN (" + UtilDAOSql.placeholders(chunk.size()) + ") AND product.type <> 'Computer'";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next()) {
+            int pid = rs.getInt(2);
+            String name = names.get(pid);
+            if (name == null) {
+              name = rs.getString(3);
+              names.put(pid, name);
+            }
+            byId.get(rs.getString(1)).getProducts().add(new Product(pid, name, rs.getFloat(4), rs.getInt(5)));
+          }
+        }
+      }
+    }
+  }
+
+  // porder or porder_archive rows, without their products
+  private static List<Order> select(Connection conn, List<String> ids, String table) throws SQLException {
+    List<Order> orders = new ArrayList<>();
+    for (List<String> chunk : UtilDAOSql.chunks(ids)) {
+      String query = "SELECT * FROM " + table + " WHERE id IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next())
+            orders.add(toOrder(rs));
+        }
+      }
+    }
+    return orders;
+  }
+
+  // the helpers below hold no state, OrderDAOSharded runs them on its shards
+  static void updateOrders(Connection conn, List<Order> orders) throws SQLException {
+    String query = "UPDATE porder SET description=?, total=?, date_time=? WHERE id=?";
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      for (Order order : orders) {
+        stat.setString(1, order.getDescription());
+        stat.setFloat(2, (float) order.getTotal());
+        stat.setTimestamp(3, Timestamp.valueOf(order.getDate()));
+        stat.setString(4, order.getId());
+        stat.addBatch();
+      }
+      stat.executeBatch();
+    }
+  }
+
+  // the stored porder rows, locked until the transaction ends
+  private Map<String, Order> stored(Connection conn, List<String> ids) throws SQLException {
+    Map<String, Order> orders = new HashMap<>();
+    for (List<String> chunk : UtilDAOSql.chunks(ids)) {
+      String query = "SELECT * FROM porder WHERE id IN (" + UtilDAOSql.placeholders(chunk.size()) + ") FOR UPDATE";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next()) {
+            Order order = toOrder(rs);
+            orders.put(order.getId(), order);
+          }
+        }
+      }
+    }
+    return orders;
+  }
+
+  // the sales change of replacing the stored orders with the given ones (none for a delete)
+  private SalesRollup.Delta replaced(Map<String, Order> stored, Map<String, Map<Integer, Integer>> lines, List<Order> orders) {
+    SalesRollup.Delta sales = new SalesRollup.Delta();
+    for (Order order : stored.values())
+      sales.remove(order, lines.getOrDefault(order.getId(), Map.of()));
+    for (Order order : orders) {
+      if (stored.containsKey(order.getId()))
+        sales.add(order, order.lines());
+    }
+    return sales;
+  }
+
+  static Map<Integer, Integer> lines(Connection conn, String oid) throws SQLException {
+    return lines(conn, List.of(oid)).getOrDefault(oid, Map.of());
+  }
+
+  // the stored lines of the orders, locked until the transaction ends
+  static Map<String, Map<Integer, Integer>> lines(Connection conn, List<String> oids) throws SQLException {
+    Map<String, Map<Integer, Integer>> lines = new HashMap<>();
+    for (List<String> chunk : UtilDAOSql.chunks(oids)) {
+      String query = "SELECT oid, pid, quantity FROM orderDetails WHERE oid IN (" + UtilDAOSql.placeholders(chunk.size()) + ") FOR UPDATE";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next())
+            lines.computeIfAbsent(rs.getString(1), oid -> new HashMap<>()).put(rs.getInt(2), rs.getInt(3));
+        }
+      }
+    }
+    return lines;
+  }
+
+  // writes only the delta: added and changed lines in one upsert batch, removed ones by key
+  static void apply(Connection conn, Map<String, OrderDiff> diffs) throws SQLException {
+    String upsertQuery = "INSERT INTO orderDetails VALUES(?, ?, ?) ON DUPLICATE KEY UPDATE quantity = VALUES(quantity)";
+    String deleteQuery = "DELETE FROM orderDetails WHERE oid = ? AND pid = ?";
+    boolean upserts = false, deletes = false;
+
+    try (PreparedStatement upsert = conn.prepareStatement(upsertQuery);
+         PreparedStatement delete = conn.prepareStatement(deleteQuery)) {
+      for (Map.Entry<String, OrderDiff> diff : diffs.entrySet()) {
+        Map<Integer, Integer> lines = diff.getValue().upserts();
+        addLines(upsert, diff.getKey(), lines);
+        upserts |= !lines.isEmpty();
+
+        for (Integer pid : diff.getValue().getRemoved()) {
+          delete.setString(1, diff.getKey());
+          delete.setInt(2, pid);
+          delete.addBatch();
+          deletes = true;
+        }
+      }
+      if (upserts)
+        upsert.executeBatch();
+      if (deletes)
+        delete.executeBatch();
+    }
+  }
+
+  static void addLines(PreparedStatement stat, String oid, Map<Integer, Integer> lines) throws SQLException {
+    for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+      stat.setString(1, oid);
+      stat.setInt(2, line.getKey());
+      stat.setInt(3, line.getValue());
+      stat.addBatch();
+    }
+  }
+
+  static Order toOrder(ResultSet rs) throws SQLException {
+    return new Order(rs.getString("id"),
+                     rs.getTimestamp("date_time").toLocalDateTime(),
+                     new ArrayList<Product>(),
+                     rs.getString("description"),
+                     rs.getDouble("total")
+                   );
+  }
 }
@@ -0,0 +1,483 @@
+package com.kristina.ecom.oms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.OrderDiff;
+import com.kristina.ecom.pms.domain.Product;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// porder and orderDetails spread over the ORDER_SHARD_URLS databases (ORDER_DAO = SHARDED).
+// an order lives on the shard OrderShardMap gives for its id, the products and the stock stay
+// on the primary. single-order calls go to one shard; readAll, the pages and the batch calls
+// run on every shard involved in parallel (a virtual thread each) and merge the results.
+// each shard commits on its own: a createAll that fails on one shard takes back what the
+// others inserted, updateAll and deleteAll don't and can stop half done. the stock is reserved
+// by OrderService before create/createAll, outside any shard transaction, and given back by
+// OrderService when they throw. the sales rollups are not kept up to date for this backend
+// (like for MONGO)
+public class OrderDAOSharded implements OrderDAO {
+  private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  // the order of readAll and stream, each shard is read in the same order and the parts merged
+  static final Comparator<Order> BY_DATE = Comparator.comparing(Order::getDate).thenComparing(Order::getId);
+
+  private final List<DataSource> shards;
+  private final DataSource products;
+  private final OrderShardMap map;
+
+  public OrderDAOSharded() {
+    Properties props = new Properties();
+    try {
+      props.load(getClass().getClassLoader().getResourceAsStream("db.properties"));
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+
+    DataSourceFactory factory = DataSourceFactory.instance();
+    List<DataSource> configured = factory.getShardDataSources();
+    // no shards configured: one shard, the primary
+    this.shards = configured.isEmpty() ? List.of(factory.getDataSource()) : configured;
+    this.products = factory.getReadDataSource();
+    this.map = new OrderShardMap(factory.getDataSource(), shards.size(),
+      Integer.parseInt(props.getProperty("ORDER_SHARD_BUCKETS", "1024").trim()));
+  }
+
+  public OrderShardMap getShardMap() {
+    return map;
+  }
+
+  @Override
+  public Order create(Order order) throws DAOException {
+    try (Connection conn = shard(order.getId()).getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        insert(conn, List.of(order));
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return order;
+  }
+
+  @Override
+  public List<Order> createAll(List<Order> orders) throws DAOException {
+    Map<Integer, List<Order>> groups = group(orders, Order::getId);
+    List<Integer> targets = new ArrayList<>(groups.keySet());
+
+    // every shard in its own transaction, a failure is returned instead of thrown
+    List<SQLException> failures = scatter(targets, (i, shard) -> {
+      try (Connection conn = shard.getConnection()) {
+        conn.setAutoCommit(false);
+        try {
+          insert(conn, groups.get(i));
+          conn.commit();
+          return null;
+        } catch (SQLException ex) {
+          conn.rollback();
+          return ex;
+        }
+      } catch (SQLException ex) {
+        return ex;
+      }
+    });
+
+    SQLException failure = null;
+    List<String> inserted = new ArrayList<>();
+    for (int t = 0; t < targets.size(); t++) {
+      if (failures.get(t) == null) {
+        for (Order order : groups.get(targets.get(t)))
+          inserted.add(order.getId());
+      } else if (failure == null) {
+        failure = failures.get(t);
+      }
+    }
+    if (failure != null) {
+      // all or nothing, like on a single database
+      if (!inserted.isEmpty()) {
+        try {
+          deleteAll(inserted);
+        } catch (DAOException ex) {
+          failure.addSuppressed(ex);
+        }
+      }
+      throw new DAOException("Error in DAO", failure);
+    }
+    return orders;
+  }
+
+  // merged by date, the products are not loaded
+  @Override
+  public List<Order> readAll() throws DAOException {
+    List<Iterator<Order>> parts = new ArrayList<>();
+    for (List<Order> part : scatter(all(), (i, shard) -> {
+      List<Order> found = new ArrayList<>();
+      try (Connection conn = shard.getConnection();
+           PreparedStatement stat = conn.prepareStatement("SELECT * FROM porder ORDER BY date_time, id");
+           ResultSet rs = stat.executeQuery()) {
+        while (rs.next())
+          found.add(OrderDAOMySql.toOrder(rs));
+      }
+      return found;
+    }))
+      parts.add(part.iterator());
+
+    List<Order> orders = new ArrayList<>();
+    merge(parts, BY_DATE).forEachRemaining(orders::add);
+    return orders;
+  }
+
+  @Override
+  public List<Order> readPage(String after, int limit) throws DAOException {
+    return readPage(new OrderQuery(null, null, OrderQuery.Sort.ID, false, after, limit));
+  }
+
+  // every shard returns its own first [limit] orders after the cursor, the merge keeps the first [limit]
+  @Override
+  public List<Order> readPage(OrderQuery query) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    for (List<Order> part : scatter(all(), (i, shard) -> OrderDAOMySql.page(shard, query)))
+      orders.addAll(part);
+    orders.sort(query.comparator());
+    return orders.size() > query.getLimit() ? new ArrayList<>(orders.subList(0, query.getLimit())) : orders;
+  }
+
+  // merged by date like readAll, every shard streams its rows sorted and holds its connection
+  // until the stream is closed
+  @Override
+  public Stream<Order> stream() throws DAOException {
+    List<Stream<Order>> parts = new ArrayList<>();
+    try {
+      for (DataSource shard : shards)
+        parts.add(UtilDAOSql.stream(shard, "SELECT * FROM porder ORDER BY date_time, id", OrderDAOMySql::toOrder));
+    } catch (DAOException ex) {
+      parts.forEach(Stream::close);
+      throw ex;
+    }
+
+    List<Iterator<Order>> heads = new ArrayList<>();
+    for (Stream<Order> part : parts)
+      heads.add(part.iterator());
+    Stream<Order> merged = StreamSupport.stream(
+      Spliterators.spliteratorUnknownSize(merge(heads, BY_DATE), Spliterator.ORDERED | Spliterator.NONNULL), false);
+    for (Stream<Order> part : parts)
+      merged = merged.onClose(part::close);
+    return merged;
+  }
+
+  // k-way merge of parts that are each sorted by order, the smallest head comes next
+  static <T> Iterator<T> merge(List<Iterator<T>> parts, Comparator<? super T> order) {
+    PriorityQueue<Head<T>> heads = new PriorityQueue<>((a, b) -> order.compare(a.value, b.value));
+    for (Iterator<T> part : parts) {
+      if (part.hasNext())
+        heads.add(new Head<>(part.next(), part));
+    }
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return !heads.isEmpty();
+      }
+
+      @Override
+      public T next() {
+        Head<T> head = heads.poll();
+        if (head == null)
+          throw new NoSuchElementException();
+        if (head.rest.hasNext())
+          heads.add(new Head<>(head.rest.next(), head.rest));
+        return head.value;
+      }
+    };
+  }
+
+  private record Head<T>(T value, Iterator<T> rest) {}
+
+  @Override
+  public Order read(String id) throws DAOException {
+    List<Order> orders = readMany(List.of(id));
+    return orders.isEmpty() ? null : orders.get(0);
+  }
+
+  @Override
+  public List<Order> readMany(List<String> ids) throws DAOException {
+    List<Order> orders = new ArrayList<>();
+    if (ids.isEmpty())
+      return orders;
+
+    Map<Integer, List<String>> groups = group(ids, id -> id);
+    Map<String, Map<Integer, Integer>> lines = new HashMap<>();
+    for (Found found : scatter(new ArrayList<>(groups.keySet()), (i, shard) -> {
+      try (Connection conn = shard.getConnection()) {
+        List<Order> stored = orders(conn, groups.get(i));
+        List<String> storedIds = new ArrayList<>();
+        for (Order order : stored)
+          storedIds.add(order.getId());
+        return new Found(stored, details(conn, storedIds));
+      }
+    })) {
+      orders.addAll(found.orders);
+      lines.putAll(found.lines);
+    }
+    attach(orders, lines);
+    return orders;
+  }
+
+  @Override
+  public int update(Order order) throws DAOException {
+    return updateAll(List.of(order));
+  }
+
+  // only the changed lines are written, like OrderDAOMySql.update
+  @Override
+  public int updateAll(List<Order> orders) throws DAOException {
+    Map<Integer, List<Order>> groups = group(orders, Order::getId);
+    int rows = 0;
+    for (int updated : scatter(new ArrayList<>(groups.keySet()), (i, shard) -> {
+      List<Order> group = groups.get(i);
+      List<String> ids = new ArrayList<>();
+      for (Order order : group)
+        ids.add(order.getId());
+
+      try (Connection conn = shard.getConnection()) {
+        conn.setAutoCommit(false);
+        try {
+          Map<String, Map<Integer, Integer>> before = OrderDAOMySql.lines(conn, ids);
+          OrderDAOMySql.updateOrders(conn, group);
+          Map<String, OrderDiff> diffs = new LinkedHashMap<>();
+          for (Order order : group)
+            diffs.put(order.getId(), new OrderDiff(before.getOrDefault(order.getId(), Map.of()), order.lines()));
+          OrderDAOMySql.apply(conn, diffs);
+          conn.commit();
+        } catch (SQLException ex) {
+          conn.rollback();
+          throw ex;
+        }
+      }
+      return group.size();
+    }))
+      rows += updated;
+    return rows;
+  }
+
+  @Override
+  public int delete(String id) throws DAOException {
+    return deleteAll(List.of(id));
+  }
+
+  @Override
+  public int deleteAll(List<String> ids) throws DAOException {
+    Map<Integer, List<String>> groups = group(ids, id -> id);
+    int rows = 0;
+    for (int deleted : scatter(new ArrayList<>(groups.keySet()), (i, shard) -> {
+      int count = 0;
+      try (Connection conn = shard.getConnection()) {
+        conn.setAutoCommit(false);
+        try {
+          for (List<String> chunk : UtilDAOSql.chunks(groups.get(i))) {
+            String in = " IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+            try (PreparedStatement details = conn.prepareStatement("DELETE FROM orderDetails WHERE oid" + in);
+                 PreparedStatement orders = conn.prepareStatement("DELETE FROM porder WHERE id" + in)) {
+              for (int p = 0; p < chunk.size(); p++) {
+                details.setString(p + 1, chunk.get(p));
+                orders.setString(p + 1, chunk.get(p));
+              }
+              details.executeUpdate();
+              count += orders.executeUpdate();
+            }
+          }
+          conn.commit();
+        } catch (SQLException ex) {
+          conn.rollback();
+          throw ex;
+        }
+      }
+      return count;
+    }))
+      rows += deleted;
+    return rows;
+  }
+
+  private DataSource shard(String id) throws DAOException {
+    return shards.get(map.shardOf(id));
+  }
+
+  private List<Integer> all() {
+    List<Integer> all = new ArrayList<>();
+    for (int i = 0; i < shards.size(); i++)
+      all.add(i);
+    return all;
+  }
+
+  private interface KeyOf<T> {
+    String of(T t);
+  }
+
+  // shard number -> the items that live there
+  private <T> Map<Integer, List<T>> group(List<T> items, KeyOf<T> key) throws DAOException {
+    Map<Integer, List<T>> groups = new LinkedHashMap<>();
+    for (T item : items)
+      groups.computeIfAbsent(map.shardOf(key.of(item)), i -> new ArrayList<>()).add(item);
+    return groups;
+  }
+
+  // what readMany got from one shard
+  private static class Found {
+    private final List<Order> orders;
+    private final Map<String, Map<Integer, Integer>> lines;
+
+    private Found(List<Order> orders, Map<String, Map<Integer, Integer>> lines) {
+      this.orders = orders;
+      this.lines = lines;
+    }
+  }
+
+  private interface ShardCall<T> {
+    T call(int index, DataSource shard) throws SQLException, DAOException;
+  }
+
+  // runs the call on the given shards at the same time, results in the order of the shards
+  private <T> List<T> scatter(List<Integer> targets, ShardCall<T> call) throws DAOException {
+    List<T> results = new ArrayList<>();
+    try {
+      if (targets.size() == 1) {
+        results.add(call.call(targets.get(0), shards.get(targets.get(0))));
+        return results;
+      }
+
+      List<Future<T>> futures = new ArrayList<>();
+      for (int i : targets)
+        futures.add(executor.submit(() -> call.call(i, shards.get(i))));
+      for (Future<T> future : futures)
+        results.add(future.get());
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof DAOException dao)
+        throw dao;
+      if (ex.getCause() instanceof Error error)
+        throw error;
+      throw new DAOException("Error in DAO", (Exception) ex.getCause());
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new DAOException("Error in DAO", ex);
+    }
+    return results;
+  }
+
+  private static void insert(Connection conn, List<Order> orders) throws SQLException {
+    try (PreparedStatement stat = conn.prepareStatement("INSERT INTO porder VALUES(? ,?, ?, ?)");
+         PreparedStatement stat2 = conn.prepareStatement("INSERT INTO orderDetails VALUES(?, ?, ?)")) {
+      for (Order order : orders) {
+        stat.setString(1, order.getId());
+        stat.setString(2, order.getDescription());
+        stat.setFloat(3, (float) order.getTotal());
+        stat.setTimestamp(4, Timestamp.valueOf(order.getDate()));
+        stat.addBatch();
+        OrderDAOMySql.addLines(stat2, order.getId(), order.lines());
+      }
+      stat.executeBatch();
+      stat2.executeBatch();
+    }
+  }
+
+  private static List<Order> orders(Connection conn, List<String> ids) throws SQLException {
+    List<Order> orders = new ArrayList<>();
+    for (List<String> chunk : UtilDAOSql.chunks(ids)) {
+      String query = "SELECT * FROM porder WHERE id IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next())
+            orders.add(OrderDAOMySql.toOrder(rs));
+        }
+      }
+    }
+    return orders;
+  }
+
+  // the stored lines, without locking them
+  private static Map<String, Map<Integer, Integer>> details(Connection conn, List<String> ids) throws SQLException {
+    Map<String, Map<Integer, Integer>> lines = new HashMap<>();
+    for (List<String> chunk : UtilDAOSql.chunks(ids)) {
+      String query = "SELECT oid, pid, quantity FROM orderDetails WHERE oid IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (int i = 0; i < chunk.size(); i++)
+          stat.setString(i + 1, chunk.get(i));
+        try (ResultSet rs = stat.executeQuery()) {
+          while (rs.next())
+            lines.computeIfAbsent(rs.getString(1), oid -> new LinkedHashMap<>()).put(rs.getInt(2), rs.getInt(3));
+        }
+      }
+    }
+    return lines;
+  }
+
+  // the product rows are on the primary: one query per chunk of product ids for all the orders,
+  // the base computer line is left out like in OrderDAOMySql.read
+  private void attach(List<Order> orders, Map<String, Map<Integer, Integer>> lines) throws DAOException {
+    Set<Integer> pids = new HashSet<>();
+    for (Map<Integer, Integer> order : lines.values())
+      pids.addAll(order.keySet());
+
+    Map<Integer, Product> components = new HashMap<>();
+    try (Connection conn = products.getConnection()) {
+      for (List<Integer> chunk : UtilDAOSql.chunks(new ArrayList<>(pids))) {
+        String query = "SELECT id, name, price FROM product WHERE type <> 'Computer' AND id IN (" +
+                       UtilDAOSql.placeholders(chunk.size()) + ")";
+        try (PreparedStatement stat = conn.prepareStatement(query)) {
+          for (int i = 0; i < chunk.size(); i++)
+            stat.setInt(i + 1, chunk.get(i));
+          try (ResultSet rs = stat.executeQuery()) {
+            while (rs.next())
+              components.put(rs.getInt(1), new Product(rs.getInt(1), rs.getString(2), rs.getFloat(3), 0));
+          }
+        }
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+
+    for (Order order : orders) {
+      List<Product> products = new ArrayList<>();
+      for (Map.Entry<Integer, Integer> line : lines.getOrDefault(order.getId(), Map.of()).entrySet()) {
+        Product component = components.get(line.getKey());
+        if (component != null)
+          products.add(new Product(component.getId(), component.getName(), component.getPrice(), line.getValue()));
+      }
+      order.setProducts(products);
+    }
+  }
+}
@@ -0,0 +1,488 @@
+package com.kristina.ecom.oms.dao;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.SalesStats;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// closed orders (older than HISTORY_CLOSED_DAYS, nobody amends them any more) copied out of MySQL
+// into column files under HISTORY_DIR, for reports over the whole history without touching the db.
+// one file per column, fixed width, little endian, in (date, id) order:
+//   time.col  long  date as epoch seconds (the wall clock time, like the timestamp column)
+//   cents.col long  total in cents, so sums are exact and are plain long loops
+//   desc.col  int   code of the description in desc.dict (writeUTF strings, every distinct one once)
+//   lines.col int   end of the order's lines in pid.col/qty.col, the start is the previous end
+//   pid.col, qty.col int  the lines, as Order.lines() (the base computer counts once)
+// meta holds the counts, the watermark (orders before it are in the files) and the keyset cursor of
+// the last order appended, so a sync that stopped half way goes on from there. the files are read
+// through read-only mappings, a scan is a binary search on time.col and a loop over the range
+public class OrderHistoryStore {
+  private static OrderHistoryStore instance;
+
+  private static final String[] COLUMNS = {"time.col", "cents.col", "desc.col", "lines.col", "pid.col", "qty.col"};
+  private static final int PAGE = 500;
+  private static final int BATCH = 20000;
+
+  public enum Period { DAY, MONTH, YEAR }
+
+  private final Path dir;
+  private final OrderDAOMySql dao;
+  private final int closedDays;
+  private final Map<String, Integer> codes = new HashMap<>(); // writer side of desc.dict
+  private volatile View view;
+
+  public OrderHistoryStore(Path dir, OrderDAOMySql dao, int closedDays) {
+    this.dir = dir;
+    this.dao = dao;
+    this.closedDays = closedDays;
+  }
+
+  public static synchronized OrderHistoryStore getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(OrderHistoryStore.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      instance = new OrderHistoryStore(Paths.get(props.getProperty("HISTORY_DIR", "history").trim()),
+        new OrderDAOMySql(),
+        Integer.parseInt(props.getProperty("HISTORY_CLOSED_DAYS", "30").trim()));
+
+      long seconds = Long.parseLong(props.getProperty("HISTORY_SYNC_SECONDS", "3600").trim());
+      if (seconds > 0) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "order-history-sync");
+          thread.setDaemon(true);
+          return thread;
+        });
+        OrderHistoryStore store = instance;
+        scheduler.scheduleWithFixedDelay(() -> {
+          try {
+            store.sync();
+          } catch (DAOException ex) {
+            ex.printStackTrace();
+          }
+        }, 0, seconds, TimeUnit.SECONDS);
+      }
+    }
+    return instance;
+  }
+
+  // appends the orders that closed since the last sync, returns how many
+  public synchronized int sync() throws DAOException {
+    View current = view();
+    LocalDateTime until = LocalDateTime.now().minusDays(closedDays).toLocalDate().atStartOfDay();
+    if (current.watermark != null && !until.isAfter(current.watermark))
+      return 0;
+
+    // the pages are written BATCH orders at a time, every write ends with a force of each file
+    int appended = 0;
+    String cursor = current.cursor;
+    List<Order> pending = new ArrayList<>();
+    List<Order> orders;
+    do {
+      OrderQuery query = new OrderQuery(current.watermark, until, OrderQuery.Sort.DATE, false, cursor, PAGE);
+      orders = dao.hydrate(dao.readPage(query));
+      if (!orders.isEmpty()) {
+        pending.addAll(orders);
+        cursor = query.cursorOf(orders.get(orders.size() - 1));
+      }
+      if (pending.size() >= BATCH) {
+        current = write(current, pending, current.watermark, cursor);
+        view = current;
+        appended += pending.size();
+        pending.clear();
+      }
+    } while (orders.size() == PAGE);
+
+    view = write(current, pending, until, cursor);
+    return appended + pending.size();
+  }
+
+  // rewrites the files from the orders in the db, in a directory next to this one, then swaps them
+  // in. scans running meanwhile keep their mappings of the old files
+  public synchronized int rebuild() throws DAOException {
+    Path fresh = dir.resolveSibling(dir.getFileName() + ".rebuild");
+    OrderHistoryStore store = new OrderHistoryStore(fresh, dao, closedDays);
+    try {
+      store.clear();
+      int orders = store.sync();
+      Files.createDirectories(dir);
+      for (String column : COLUMNS)
+        Files.move(fresh.resolve(column), dir.resolve(column), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(fresh.resolve("desc.dict"), dir.resolve("desc.dict"), StandardCopyOption.REPLACE_EXISTING);
+      Files.move(fresh.resolve("meta"), dir.resolve("meta"), StandardCopyOption.REPLACE_EXISTING);
+      Files.delete(fresh);
+      view = null;
+      codes.clear();
+      return orders;
+    } catch (IOException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  public int size() throws DAOException {
+    return view().orders;
+  }
+
+  // orders before this are in the store, null while it is empty
+  public LocalDateTime getWatermark() throws DAOException {
+    return view().watermark;
+  }
+
+  // orders, revenue and units per product for from <= date < to (either may be null), revenue per
+  // period newest first, the [top] best selling products
+  public SalesStats stats(LocalDateTime from, LocalDateTime to, Period period, int top) throws DAOException {
+    View v = view();
+    int lo = from == null ? 0 : v.index(from);
+    int hi = to == null ? v.orders : v.index(to);
+    if (hi <= lo)
+      return new SalesStats(0, 0, 0, new LinkedHashMap<>(), new LinkedHashMap<>());
+
+    long cents = v.sum(lo, hi);
+    Map<LocalDate, SalesStats.Day> periods = new LinkedHashMap<>();
+    LocalDate end = v.time(hi - 1).toLocalDate();
+    for (LocalDate start = start(v.time(lo).toLocalDate(), period); !start.isAfter(end); start = next(start, period)) {
+      int a = Math.max(lo, v.index(start.atStartOfDay()));
+      int b = Math.min(hi, v.index(next(start, period).atStartOfDay()));
+      if (b > a)
+        periods.put(start, new SalesStats.Day(b - a, v.sum(a, b) / 100.0));
+    }
+    List<LocalDate> starts = new ArrayList<>(periods.keySet());
+    Collections.reverse(starts);
+    Map<LocalDate, SalesStats.Day> newest = new LinkedHashMap<>();
+    for (LocalDate start : starts)
+      newest.put(start, periods.get(start));
+
+    long[] units = v.units(lo, hi);
+    Map<Integer, Long> best = new LinkedHashMap<>();
+    List<Integer> pids = new ArrayList<>();
+    for (int pid = 0; pid < units.length; pid++) {
+      if (units[pid] != 0)
+        pids.add(pid);
+    }
+    pids.sort(Comparator.comparingLong((Integer pid) -> units[pid]).reversed());
+    for (int pid : pids.subList(0, Math.min(top, pids.size())))
+      best.put(pid, units[pid]);
+
+    return new SalesStats(hi - lo, cents / 100.0, cents / 100.0 / (hi - lo), newest, best);
+  }
+
+  // the [top] most ordered descriptions (computer configurations) for from <= date < to
+  public Map<String, Long> descriptions(LocalDateTime from, LocalDateTime to, int top) throws DAOException {
+    View v = view();
+    int lo = from == null ? 0 : v.index(from);
+    int hi = to == null ? v.orders : v.index(to);
+
+    long[] counts = new long[v.dict.size()];
+    for (int i = lo; i < hi; i++)
+      counts[v.desc.get(i)]++;
+
+    Map<String, Long> descriptions = new LinkedHashMap<>();
+    List<Integer> codes = new ArrayList<>();
+    for (int code = 0; code < counts.length; code++) {
+      if (counts[code] != 0)
+        codes.add(code);
+    }
+    codes.sort(Comparator.comparingLong((Integer code) -> counts[code]).reversed());
+    for (int code : codes.subList(0, Math.min(top, codes.size())))
+      descriptions.put(v.dict.get(code), counts[code]);
+    return descriptions;
+  }
+
+  private static LocalDate start(LocalDate day, Period period) {
+    switch (period) {
+      case YEAR:
+        return day.withDayOfYear(1);
+      case MONTH:
+        return day.withDayOfMonth(1);
+      default:
+        return day;
+    }
+  }
+
+  private static LocalDate next(LocalDate start, Period period) {
+    switch (period) {
+      case YEAR:
+        return start.plusYears(1);
+      case MONTH:
+        return start.plusMonths(1);
+      default:
+        return start.plusDays(1);
+    }
+  }
+
+  private View view() throws DAOException {
+    View current = view;
+    if (current == null) {
+      synchronized (this) {
+        if (view == null)
+          view = open();
+        current = view;
+      }
+    }
+    return current;
+  }
+
+  private void clear() throws IOException {
+    if (Files.isDirectory(dir)) {
+      try (var files = Files.list(dir)) {
+        for (Path file : files.toList())
+          Files.delete(file);
+      }
+    }
+    view = null;
+    codes.clear();
+  }
+
+  // maps the files up to the counts in meta, anything after them is a write that didn't finish
+  private View open() throws DAOException {
+    try {
+      Files.createDirectories(dir);
+      Path meta = dir.resolve("meta");
+      if (!Files.exists(meta))
+        return map(0, 0, 0, null, null, new ArrayList<>());
+
+      int orders;
+      int lines;
+      long dictBytes;
+      LocalDateTime watermark;
+      String cursor;
+      try (DataInputStream in = new DataInputStream(Files.newInputStream(meta))) {
+        orders = in.readInt();
+        lines = in.readInt();
+        dictBytes = in.readLong();
+        long seconds = in.readLong();
+        watermark = seconds == Long.MIN_VALUE ? null : LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+        cursor = in.readUTF();
+      }
+
+      List<String> dict = new ArrayList<>();
+      try (InputStream file = Files.newInputStream(dir.resolve("desc.dict"));
+           DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+        long read = 0;
+        while (read < dictBytes) {
+          String description = in.readUTF();
+          dict.add(description);
+          read += 2 + utfLength(description);
+        }
+      }
+      codes.clear();
+      for (int code = 0; code < dict.size(); code++)
+        codes.put(dict.get(code), code);
+      return map(orders, lines, dictBytes, watermark, cursor.isEmpty() ? null : cursor, dict);
+    } catch (IOException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  // appends the orders after the current counts, forces the columns, then writes meta
+  private View write(View current, List<Order> orders, LocalDateTime watermark, String cursor) throws DAOException {
+    ByteBuffer time = column(orders.size() * 8);
+    ByteBuffer cents = column(orders.size() * 8);
+    ByteBuffer desc = column(orders.size() * 4);
+    ByteBuffer ends = column(orders.size() * 4);
+    ByteArrayOutputStream pidBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream qtyBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream dict = new ByteArrayOutputStream();
+    List<String> added = new ArrayList<>();
+
+    try {
+      // DataOutputStream is big endian, the ints go in reversed
+      DataOutputStream pids = new DataOutputStream(pidBytes);
+      DataOutputStream qtys = new DataOutputStream(qtyBytes);
+      DataOutputStream newDescriptions = new DataOutputStream(dict);
+      int lines = current.lines;
+      for (Order order : orders) {
+        time.putLong(order.getDate().toEpochSecond(ZoneOffset.UTC));
+        cents.putLong(Math.round(order.getTotal() * 100));
+        String description = order.getDescription() == null ? "" : order.getDescription();
+        Integer code = codes.get(description);
+        if (code == null) {
+          code = current.dict.size() + added.size();
+          codes.put(description, code);
+          added.add(description);
+          newDescriptions.writeUTF(description);
+        }
+        desc.putInt(code);
+        for (Map.Entry<Integer, Integer> line : order.lines().entrySet()) {
+          pids.writeInt(Integer.reverseBytes(line.getKey()));
+          qtys.writeInt(Integer.reverseBytes(line.getValue()));
+          lines++;
+        }
+        ends.putInt(lines);
+      }
+
+      append("time.col", (long) current.orders * 8, time.flip());
+      append("cents.col", (long) current.orders * 8, cents.flip());
+      append("desc.col", (long) current.orders * 4, desc.flip());
+      append("lines.col", (long) current.orders * 4, ends.flip());
+      append("pid.col", (long) current.lines * 4, ByteBuffer.wrap(pidBytes.toByteArray()));
+      append("qty.col", (long) current.lines * 4, ByteBuffer.wrap(qtyBytes.toByteArray()));
+      append("desc.dict", current.dictBytes, ByteBuffer.wrap(dict.toByteArray()));
+
+      List<String> descriptions = new ArrayList<>(current.dict);
+      descriptions.addAll(added);
+      View next = map(current.orders + orders.size(), lines, current.dictBytes + dict.size(), watermark, cursor, descriptions);
+
+      // meta last, replaced in one move, so a crash leaves the previous counts
+      Path tmp = dir.resolve("meta.tmp");
+      try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+        out.writeInt(next.orders);
+        out.writeInt(next.lines);
+        out.writeLong(next.dictBytes);
+        out.writeLong(watermark == null ? Long.MIN_VALUE : watermark.toEpochSecond(ZoneOffset.UTC));
+        out.writeUTF(cursor == null ? "" : cursor);
+      }
+      Files.move(tmp, dir.resolve("meta"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      return next;
+    } catch (IOException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  private void append(String file, long position, ByteBuffer bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(dir.resolve(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+      channel.position(position);
+      while (bytes.hasRemaining())
+        channel.write(bytes);
+      channel.force(false);
+    }
+  }
+
+  private View map(int orders, int lines, long dictBytes, LocalDateTime watermark, String cursor,
+                   List<String> dict) throws IOException {
+    return new View(orders, lines, dictBytes, watermark, cursor, dict,
+      map("time.col", orders * 8L).asLongBuffer(),
+      map("cents.col", orders * 8L).asLongBuffer(),
+      map("desc.col", orders * 4L).asIntBuffer(),
+      map("lines.col", orders * 4L).asIntBuffer(),
+      map("pid.col", lines * 4L).asIntBuffer(),
+      map("qty.col", lines * 4L).asIntBuffer());
+  }
+
+  // the mapping stays valid after the channel is closed
+  private ByteBuffer map(String file, long size) throws IOException {
+    if (size == 0)
+      return column(0);
+    try (FileChannel channel = FileChannel.open(dir.resolve(file), StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+  }
+
+  private static ByteBuffer column(int size) {
+    return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static int utfLength(String s) {
+    int length = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      length += c >= 1 && c <= 0x7f ? 1 : c <= 0x7ff ? 2 : 3;
+    }
+    return length;
+  }
+
+  // one consistent set of mappings, replaced as a whole after every write
+  private static class View {
+    final int orders;
+    final int lines;
+    final long dictBytes;
+    final LocalDateTime watermark;
+    final String cursor;
+    final List<String> dict;
+    final LongBuffer time;
+    final LongBuffer cents;
+    final IntBuffer desc;
+    final IntBuffer ends;
+    final IntBuffer pids;
+    final IntBuffer qtys;
+
+    View(int orders, int lines, long dictBytes, LocalDateTime watermark, String cursor, List<String> dict,
+         LongBuffer time, LongBuffer cents, IntBuffer desc, IntBuffer ends, IntBuffer pids, IntBuffer qtys) {
+      this.orders = orders;
+      this.lines = lines;
+      this.dictBytes = dictBytes;
+      this.watermark = watermark;
+      this.cursor = cursor;
+      this.dict = dict;
+      this.time = time;
+      this.cents = cents;
+      this.desc = desc;
+      this.ends = ends;
+      this.pids = pids;
+      this.qtys = qtys;
+    }
+
+    LocalDateTime time(int i) {
+      return LocalDateTime.ofEpochSecond(time.get(i), 0, ZoneOffset.UTC);
+    }
+
+    // the first order at or after the date
+    int index(LocalDateTime date) {
+      long seconds = date.toEpochSecond(ZoneOffset.UTC);
+      int lo = 0;
+      int hi = orders;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (time.get(mid) < seconds)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      return lo;
+    }
+
+    // a plain long reduction over a contiguous range, no branches, which the JIT unrolls
+    long sum(int from, int to) {
+      long sum = 0;
+      for (int i = from; i < to; i++)
+        sum += cents.get(i);
+      return sum;
+    }
+
+    // units per product id (the index) over the lines of orders [from, to)
+    long[] units(int from, int to) {
+      int start = from == 0 ? 0 : ends.get(from - 1);
+      int end = to == 0 ? 0 : ends.get(to - 1);
+      int max = 0;
+      for (int i = start; i < end; i++)
+        max = Math.max(max, pids.get(i));
+      long[] units = new long[end > start ? max + 1 : 0];
+      for (int i = start; i < end; i++)
+        units[pids.get(i)] += qtys.get(i);
+      return units;
+    }
+  }
+}
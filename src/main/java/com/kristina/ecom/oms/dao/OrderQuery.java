@@ -0,0 +1,135 @@
+package com.kristina.ecom.oms.dao;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+
+import com.kristina.ecom.oms.domain.Order;
+
+// one page of orders: optional date range [from, to), sort key and direction, and a keyset cursor.
+// the cursor is the sort value and id of the last order of the previous page ("value|id"),
+// so the next page is a range scan on the (sort column, id) index however deep it is.
+// the cursor comes from the client and is parsed here, once: one that doesn't parse is
+// malformed and the DAOs answer it with an empty page
+public class OrderQuery {
+  public enum Sort { ID, DATE, TOTAL }
+
+  private final LocalDateTime from;
+  private final LocalDateTime to;
+  private final Sort sort;
+  private final boolean descending;
+  private final String after;
+  private final int limit;
+  private final String afterId;
+  private final LocalDateTime afterDate;
+  private final double afterTotal;
+  private final boolean malformed;
+
+  public OrderQuery(LocalDateTime from, LocalDateTime to, Sort sort, boolean descending, String after, int limit) {
+    this.from = from;
+    this.to = to;
+    this.sort = sort == null ? Sort.ID : sort;
+    this.descending = descending;
+    this.after = after == null || after.isEmpty() ? null : after;
+    this.limit = limit;
+
+    String id = this.after;
+    LocalDateTime date = null;
+    double total = 0;
+    boolean malformed = false;
+    if (this.after != null && this.sort != Sort.ID) {
+      int bar = this.after.lastIndexOf('|');
+      id = this.after.substring(bar + 1);
+      try {
+        if (bar < 0 || id.isEmpty())
+          malformed = true;
+        else if (this.sort == Sort.DATE)
+          date = LocalDateTime.parse(this.after.substring(0, bar));
+        else
+          total = Double.parseDouble(this.after.substring(0, bar));
+      } catch (DateTimeParseException | NumberFormatException ex) {
+        malformed = true;
+      }
+      if (Double.isNaN(total) || Double.isInfinite(total))
+        malformed = true;
+    }
+    this.afterId = malformed ? null : id;
+    this.afterDate = date;
+    this.afterTotal = total;
+    this.malformed = malformed;
+  }
+
+  public LocalDateTime getFrom() {
+    return from;
+  }
+
+  public LocalDateTime getTo() {
+    return to;
+  }
+
+  public Sort getSort() {
+    return sort;
+  }
+
+  public boolean isDescending() {
+    return descending;
+  }
+
+  public String getAfter() {
+    return after;
+  }
+
+  public int getLimit() {
+    return limit;
+  }
+
+  public OrderQuery withLimit(int limit) {
+    return new OrderQuery(from, to, sort, descending, after, limit);
+  }
+
+  // the cursor that continues after this order
+  public String cursorOf(Order order) {
+    switch (sort) {
+      case DATE:
+        return order.getDate() + "|" + order.getId();
+      case TOTAL:
+        return order.getTotal() + "|" + order.getId();
+      default:
+        return order.getId();
+    }
+  }
+
+  // the order of a page, for merging pages read from several places
+  public Comparator<Order> comparator() {
+    Comparator<Order> comparator;
+    switch (sort) {
+      case DATE:
+        comparator = Comparator.comparing(Order::getDate).thenComparing(Order::getId);
+        break;
+      case TOTAL:
+        comparator = Comparator.comparingDouble(Order::getTotal).thenComparing(Order::getId);
+        break;
+      default:
+        comparator = Comparator.comparing(Order::getId);
+    }
+    return descending ? comparator.reversed() : comparator;
+  }
+
+  // a cursor that doesn't fit the sort, nothing comes after it
+  public boolean isMalformed() {
+    return malformed;
+  }
+
+  // the id part of the cursor
+  public String afterId() {
+    return afterId;
+  }
+
+  public LocalDateTime afterDate() {
+    return afterDate;
+  }
+
+  public double afterTotal() {
+    return afterTotal;
+  }
+}
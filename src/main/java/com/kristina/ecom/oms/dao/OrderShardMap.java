@@ -0,0 +1,116 @@
+package com.kristina.ecom.oms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+// order id -> shard. ids hash into a fixed number of buckets and order_shard_map (on the primary)
+// says which shard holds each bucket, so rebalancing moves whole buckets: copy the bucket's
+// orders to the new shard, then point the bucket at it with move(). the bucket count is fixed
+// the first time the table is filled, only the bucket -> shard rows change after that
+public class OrderShardMap {
+  private final DataSource datasource;
+  private final int shards;
+  private final int initialBuckets;
+  private volatile int[] buckets; // bucket -> shard, null until loaded
+
+  public OrderShardMap(DataSource datasource, int shards, int initialBuckets) {
+    this.datasource = datasource;
+    this.shards = shards;
+    this.initialBuckets = initialBuckets;
+  }
+
+  public int shardOf(String id) throws DAOException {
+    int[] current = buckets();
+    return current[bucketOf(id, current.length)];
+  }
+
+  public static int bucketOf(String id, int buckets) {
+    int h = id.hashCode() * 0x9E3779B9;
+    return Math.floorMod(h ^ (h >>> 16), buckets);
+  }
+
+  public int getBuckets() throws DAOException {
+    return buckets().length;
+  }
+
+  // points a bucket at another shard, its orders must already be there
+  public void move(int bucket, int shard) throws DAOException {
+    if (shard < 0 || shard >= shards)
+      throw new DAOException("No such shard: " + shard, new IllegalArgumentException());
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement("UPDATE order_shard_map SET shard = ? WHERE bucket = ?")) {
+      stat.setInt(1, shard);
+      stat.setInt(2, bucket);
+      stat.executeUpdate();
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    reload();
+  }
+
+  // rereads the table, after a move made by another instance
+  public synchronized void reload() throws DAOException {
+    buckets = load();
+  }
+
+  private int[] buckets() throws DAOException {
+    int[] current = buckets;
+    if (current == null) {
+      synchronized (this) {
+        if (buckets == null)
+          buckets = load();
+        current = buckets;
+      }
+    }
+    return current;
+  }
+
+  private int[] load() throws DAOException {
+    try (Connection conn = datasource.getConnection()) {
+      Map<Integer, Integer> rows = read(conn);
+      if (rows.isEmpty()) {
+        // first start: bucket i on shard i % shards
+        try (PreparedStatement stat = conn.prepareStatement("INSERT IGNORE INTO order_shard_map VALUES(?, ?)")) {
+          for (int bucket = 0; bucket < initialBuckets; bucket++) {
+            stat.setInt(1, bucket);
+            stat.setInt(2, bucket % shards);
+            stat.addBatch();
+          }
+          stat.executeBatch();
+        }
+        rows = read(conn);
+      }
+
+      int[] loaded = new int[rows.size()];
+      for (int bucket = 0; bucket < loaded.length; bucket++) {
+        Integer shard = rows.get(bucket);
+        if (shard == null || shard < 0 || shard >= shards)
+          throw new DAOException("order_shard_map: bucket " + bucket + " is on shard " + shard +
+                                 ", " + shards + " shards configured", new IllegalStateException());
+        loaded[bucket] = shard;
+      }
+      return loaded;
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  private static Map<Integer, Integer> read(Connection conn) throws SQLException {
+    Map<Integer, Integer> rows = new HashMap<>();
+    try (Statement stat = conn.createStatement();
+         ResultSet rs = stat.executeQuery("SELECT bucket, shard FROM order_shard_map")) {
+      while (rs.next())
+        rows.put(rs.getInt(1), rs.getInt(2));
+    }
+    return rows;
+  }
+}
@@ -0,0 +1,170 @@
+package com.kristina.ecom.oms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+
+// follow-up work of a write, inserted in the write's own transaction so it exists exactly when
+// the write committed, and run afterwards by OutboxDispatcher. a row stays until its handler
+// is done with it: claim() leases a batch for OUTBOX_LEASE_SECONDS, a lease that runs out
+// (handler failed, instance died) makes the row claimable again. at least once, so every
+// handler must be safe to run twice. an event claimed OUTBOX_MAX_ATTEMPTS times without being done
+// is marked dead instead of claimed again, counted in outbox.dead and kept for a look. the optional key is unique, a second event with the
+// same key rolls back the write it came with (a cart checked out twice)
+public class Outbox {
+  private static Outbox instance;
+
+  public enum Type { SALES, EVICT_STOCK, CART_COMPLETED }
+
+  public record Event(long id, Type type, String key, String payload) {
+    // sales rollup of a checkout, applied later instead of in the checkout transaction
+    public static Event sales(SalesRollup.Delta delta) {
+      return new Event(0, Type.SALES, null, delta.encode());
+    }
+
+    // product cache entries holding stock that changed
+    public static Event evictStock(Collection<Integer> ids) {
+      return new Event(0, Type.EVICT_STOCK, null, ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+    }
+
+    public static Event cartCompleted(String cartId, String userId) {
+      return new Event(0, Type.CART_COMPLETED, "cart:" + cartId, cartId + "|" + (userId == null ? "" : userId));
+    }
+  }
+
+  private final DataSource datasource;
+  private final long lease;
+  private final int attempts;
+
+  public Outbox(DataSource datasource, long lease, int attempts) {
+    this.datasource = datasource;
+    this.lease = lease;
+    this.attempts = attempts;
+  }
+
+  public static synchronized Outbox getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(Outbox.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      instance = new Outbox(DataSourceFactory.instance().getDataSource(),
+        Long.parseLong(props.getProperty("OUTBOX_LEASE_SECONDS", "30").trim()),
+        Integer.parseInt(props.getProperty("OUTBOX_MAX_ATTEMPTS", "10").trim()));
+    }
+    return instance;
+  }
+
+  // runs in the caller's transaction
+  public void append(Connection conn, List<Event> events) throws SQLException {
+    if (events.isEmpty())
+      return;
+    try (PreparedStatement stat = conn.prepareStatement("INSERT INTO outbox(type, ukey, payload) VALUES(?, ?, ?)")) {
+      for (Event event : events) {
+        stat.setString(1, event.type().name());
+        stat.setString(2, event.key());
+        stat.setString(3, event.payload());
+        stat.addBatch();
+      }
+      stat.executeBatch();
+    }
+  }
+
+  // leases up to limit events, oldest first. rows another dispatcher holds locked are skipped,
+  // rows out of attempts are marked dead and not returned
+  public List<Event> claim(int limit) throws DAOException {
+    String select = "SELECT id, type, ukey, payload, attempts FROM outbox " +
+                    "WHERE NOT dead AND (lease_until IS NULL OR lease_until < ?) " +
+                    "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    List<Event> events = new ArrayList<>();
+    List<Event> dead = new ArrayList<>();
+    LocalDateTime now = LocalDateTime.now();
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        try (PreparedStatement stat = conn.prepareStatement(select)) {
+          stat.setTimestamp(1, Timestamp.valueOf(now));
+          stat.setInt(2, limit);
+          try (ResultSet rs = stat.executeQuery()) {
+            while (rs.next()) {
+              Event event = new Event(rs.getLong("id"), Type.valueOf(rs.getString("type")),
+                                      rs.getString("ukey"), rs.getString("payload"));
+              (rs.getInt("attempts") >= attempts ? dead : events).add(event);
+            }
+          }
+        }
+
+        if (!dead.isEmpty()) {
+          String update = "UPDATE outbox SET dead = TRUE WHERE id IN (" + UtilDAOSql.placeholders(dead.size()) + ")";
+          try (PreparedStatement stat = conn.prepareStatement(update)) {
+            for (int i = 0; i < dead.size(); i++)
+              stat.setLong(i + 1, dead.get(i).id());
+            stat.executeUpdate();
+          }
+        }
+
+        if (!events.isEmpty()) {
+          String update = "UPDATE outbox SET lease_until = ?, attempts = attempts + 1 " +
+                          "WHERE id IN (" + UtilDAOSql.placeholders(events.size()) + ")";
+          try (PreparedStatement stat = conn.prepareStatement(update)) {
+            stat.setTimestamp(1, Timestamp.valueOf(now.plusSeconds(lease)));
+            for (int i = 0; i < events.size(); i++)
+              stat.setLong(i + 2, events.get(i).id());
+            stat.executeUpdate();
+          }
+        }
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+
+    for (Event event : dead) {
+      Counter.builder("outbox.dead")
+        .tag("type", event.type().name())
+        .register(Metrics.globalRegistry)
+        .increment();
+    }
+    return events;
+  }
+
+  public int done(long id) throws DAOException {
+    try (Connection conn = datasource.getConnection()) {
+      return done(conn, id);
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  // in the handler's transaction, 0 when another dispatcher already finished the event
+  public int done(Connection conn, long id) throws SQLException {
+    try (PreparedStatement stat = conn.prepareStatement("DELETE FROM outbox WHERE id = ?")) {
+      stat.setLong(1, id);
+      return stat.executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,344 @@
+package com.kristina.ecom.oms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.oms.domain.SalesStats;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// sales aggregates kept up to date with every order write instead of scanning the orders:
+// sales_daily (orders and revenue per day) and sales_product (units per product).
+// the order DAO puts a Delta in the outbox inside its own transaction, so order writes don't
+// queue on the rollup rows. OutboxDispatcher adds it to the tables and hands it to committed(),
+// which applies it to the in-memory counters the stats are served from.
+// the counters are reloaded from the tables every SALES_SYNC_SECONDS, rebuild() recomputes both
+public class SalesRollup {
+  private static SalesRollup instance;
+
+  private final DataSource datasource;
+  private final AtomicReference<Counters> counters = new AtomicReference<>();
+
+  public SalesRollup(DataSource datasource) {
+    this.datasource = datasource;
+  }
+
+  public static synchronized SalesRollup getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(SalesRollup.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      instance = new SalesRollup(DataSourceFactory.instance().getDataSource());
+
+      long seconds = Long.parseLong(props.getProperty("SALES_SYNC_SECONDS", "60").trim());
+      if (seconds > 0) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "sales-rollup-sync");
+          thread.setDaemon(true);
+          return thread;
+        });
+        scheduler.scheduleWithFixedDelay(instance::sync, seconds, seconds, TimeUnit.SECONDS);
+      }
+    }
+    return instance;
+  }
+
+  // runs in the caller's transaction, the outbox handler's
+  public void record(Connection conn, Delta delta) throws SQLException {
+    if (delta.isEmpty())
+      return;
+
+    String dailyQuery = "INSERT INTO sales_daily VALUES(?, ?, ?) " +
+                        "ON DUPLICATE KEY UPDATE orders = orders + VALUES(orders), revenue = revenue + VALUES(revenue)";
+    String productQuery = "INSERT INTO sales_product VALUES(?, ?) " +
+                          "ON DUPLICATE KEY UPDATE units = units + VALUES(units)";
+
+    try (PreparedStatement daily = conn.prepareStatement(dailyQuery);
+         PreparedStatement product = conn.prepareStatement(productQuery)) {
+      for (Map.Entry<LocalDate, Day> day : delta.daily.entrySet()) {
+        daily.setDate(1, Date.valueOf(day.getKey()));
+        daily.setLong(2, day.getValue().orders);
+        daily.setDouble(3, day.getValue().revenue);
+        daily.addBatch();
+      }
+      for (Map.Entry<Integer, Long> units : delta.units.entrySet()) {
+        product.setInt(1, units.getKey());
+        product.setLong(2, units.getValue());
+        product.addBatch();
+      }
+      if (!delta.daily.isEmpty())
+        daily.executeBatch();
+      if (!delta.units.isEmpty())
+        product.executeBatch();
+    }
+  }
+
+  // for order backends without a SQL transaction of their own
+  public void record(Delta delta) throws DAOException {
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        record(conn, delta);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    committed(delta);
+  }
+
+  // the transaction that recorded the delta went through
+  public void committed(Delta delta) {
+    Counters current = counters.get();
+    if (current != null)
+      current.apply(delta);
+  }
+
+  // answered from the counters, the cost depends on the days and products asked for, not on the orders
+  public SalesStats stats(int days, int top) throws DAOException {
+    Counters current = counters();
+    long orders = current.orders.sum();
+    double revenue = current.revenue.sum();
+
+    Map<LocalDate, SalesStats.Day> daily = new LinkedHashMap<>();
+    for (Map.Entry<LocalDate, DayAdder> day : current.daily.descendingMap().entrySet()) {
+      if (daily.size() == days)
+        break;
+      daily.put(day.getKey(), new SalesStats.Day(day.getValue().orders.sum(), day.getValue().revenue.sum()));
+    }
+
+    Map<Integer, Long> units = new LinkedHashMap<>();
+    current.units.entrySet().stream()
+      .map(entry -> Map.entry(entry.getKey(), entry.getValue().sum()))
+      .sorted(Map.Entry.<Integer, Long>comparingByValue(Comparator.reverseOrder()))
+      .limit(top)
+      .forEach(entry -> units.put(entry.getKey(), entry.getValue()));
+
+    return new SalesStats(orders, revenue, orders == 0 ? 0 : revenue / orders, daily, units);
+  }
+
+  // recomputes the tables from porder/orderDetails and their archives and reloads the counters
+  public void rebuild() throws DAOException {
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (Statement stat = conn.createStatement()) {
+        // the deltas still waiting in the outbox are in the orders already
+        stat.executeUpdate("DELETE FROM outbox WHERE type = 'SALES'");
+        stat.executeUpdate("DELETE FROM sales_daily");
+        stat.executeUpdate("INSERT INTO sales_daily " +
+                           "SELECT DATE(date_time), COUNT(*), SUM(total) FROM " +
+                           "(SELECT date_time, total FROM porder UNION ALL SELECT date_time, total FROM porder_archive) o " +
+                           "GROUP BY DATE(date_time)");
+        stat.executeUpdate("DELETE FROM sales_product");
+        stat.executeUpdate("INSERT INTO sales_product " +
+                           "SELECT pid, SUM(quantity) FROM " +
+                           "(SELECT pid, quantity FROM orderDetails UNION ALL SELECT pid, quantity FROM orderDetails_archive) d " +
+                           "GROUP BY pid");
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    counters.set(load());
+  }
+
+  public void sync() {
+    if (counters.get() == null)
+      return;
+    try {
+      counters.set(load());
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+  }
+
+  private Counters counters() throws DAOException {
+    Counters current = counters.get();
+    if (current == null) {
+      current = load();
+      if (!counters.compareAndSet(null, current))
+        current = counters.get();
+    }
+    return current;
+  }
+
+  private Counters load() throws DAOException {
+    Counters loaded = new Counters();
+    Delta delta = new Delta();
+
+    try (Connection conn = datasource.getConnection();
+         Statement stat = conn.createStatement()) {
+      try (ResultSet rs = stat.executeQuery("SELECT day, orders, revenue FROM sales_daily")) {
+        while (rs.next()) {
+          Day day = delta.day(rs.getDate(1).toLocalDate());
+          day.orders = rs.getLong(2);
+          day.revenue = rs.getDouble(3);
+        }
+      }
+      try (ResultSet rs = stat.executeQuery("SELECT pid, units FROM sales_product")) {
+        while (rs.next())
+          delta.units.put(rs.getInt(1), rs.getLong(2));
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    loaded.apply(delta);
+    return loaded;
+  }
+
+  // what one transaction changes in the aggregates. an amended order is removed and added again,
+  // so only the difference is left
+  public static class Delta {
+    private final Map<LocalDate, Day> daily = new TreeMap<>();
+    private final Map<Integer, Long> units = new TreeMap<>();
+
+    public Delta add(Order order, Map<Integer, Integer> lines) {
+      return change(order, lines, 1);
+    }
+
+    public Delta remove(Order order, Map<Integer, Integer> lines) {
+      return change(order, lines, -1);
+    }
+
+    // folds another delta in, the outbox applies a batch of them as one
+    public Delta merge(Delta other) {
+      for (Map.Entry<LocalDate, Day> entry : other.daily.entrySet()) {
+        Day day = day(entry.getKey());
+        day.orders += entry.getValue().orders;
+        day.revenue += entry.getValue().revenue;
+        if (day.orders == 0 && Math.abs(day.revenue) < 1e-9)
+          daily.remove(entry.getKey());
+      }
+      for (Map.Entry<Integer, Long> line : other.units.entrySet()) {
+        long units = this.units.getOrDefault(line.getKey(), 0L) + line.getValue();
+        if (units == 0)
+          this.units.remove(line.getKey());
+        else
+          this.units.put(line.getKey(), units);
+      }
+      return this;
+    }
+
+    public boolean isEmpty() {
+      return daily.isEmpty() && units.isEmpty();
+    }
+
+    private Delta change(Order order, Map<Integer, Integer> lines, int sign) {
+      Day day = day(order.getDate().toLocalDate());
+      day.orders += sign;
+      day.revenue += sign * order.getTotal();
+      if (day.orders == 0 && Math.abs(day.revenue) < 1e-9)
+        daily.remove(order.getDate().toLocalDate());
+
+      for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+        long units = this.units.getOrDefault(line.getKey(), 0L) + (long) sign * line.getValue();
+        if (units == 0)
+          this.units.remove(line.getKey());
+        else
+          this.units.put(line.getKey(), units);
+      }
+      return this;
+    }
+
+    private Day day(LocalDate date) {
+      return daily.computeIfAbsent(date, d -> new Day());
+    }
+
+    // "2026-10-17=2,1499.98;...|12=3;14=1", how a delta waits in the outbox
+    public String encode() {
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<LocalDate, Day> day : daily.entrySet()) {
+        if (sb.length() > 0)
+          sb.append(';');
+        sb.append(day.getKey()).append('=').append(day.getValue().orders).append(',').append(day.getValue().revenue);
+      }
+      sb.append('|');
+      String separator = "";
+      for (Map.Entry<Integer, Long> line : units.entrySet()) {
+        sb.append(separator).append(line.getKey()).append('=').append(line.getValue());
+        separator = ";";
+      }
+      return sb.toString();
+    }
+
+    public static Delta decode(String encoded) {
+      Delta delta = new Delta();
+      String[] parts = encoded.split("\\|", -1);
+      for (String entry : parts[0].split(";")) {
+        if (entry.isEmpty())
+          continue;
+        String[] day = entry.split("[=,]");
+        Day value = delta.day(LocalDate.parse(day[0]));
+        value.orders = Long.parseLong(day[1]);
+        value.revenue = Double.parseDouble(day[2]);
+      }
+      for (String entry : parts[1].split(";")) {
+        if (entry.isEmpty())
+          continue;
+        String[] line = entry.split("=");
+        delta.units.put(Integer.parseInt(line[0]), Long.parseLong(line[1]));
+      }
+      return delta;
+    }
+  }
+
+  private static class Day {
+    private long orders;
+    private double revenue;
+  }
+
+  private static class Counters {
+    private final LongAdder orders = new LongAdder();
+    private final DoubleAdder revenue = new DoubleAdder();
+    private final ConcurrentSkipListMap<LocalDate, DayAdder> daily = new ConcurrentSkipListMap<>();
+    private final Map<Integer, LongAdder> units = new ConcurrentHashMap<>();
+
+    private void apply(Delta delta) {
+      for (Map.Entry<LocalDate, Day> day : delta.daily.entrySet()) {
+        DayAdder adder = daily.computeIfAbsent(day.getKey(), d -> new DayAdder());
+        adder.orders.add(day.getValue().orders);
+        adder.revenue.add(day.getValue().revenue);
+        orders.add(day.getValue().orders);
+        revenue.add(day.getValue().revenue);
+      }
+      for (Map.Entry<Integer, Long> units : delta.units.entrySet())
+        this.units.computeIfAbsent(units.getKey(), pid -> new LongAdder()).add(units.getValue());
+    }
+  }
+
+  private static class DayAdder {
+    private final LongAdder orders = new LongAdder();
+    private final DoubleAdder revenue = new DoubleAdder();
+  }
+}
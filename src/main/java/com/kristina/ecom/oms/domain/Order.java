@@ -1,19 +1,15 @@
 package com.kristina.ecom.oms.domain;
 
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 import com.kristina.ecom.pms.domain.Computer;
 import com.kristina.ecom.pms.domain.ComputerBase;
 import com.kristina.ecom.pms.domain.Product;
 
 public class Order {
-  private static final int SIZE = 10000;
-  private static List<Integer> ids = new Random().ints(1, SIZE+1)
-  .distinct().limit(SIZE).boxed().collect((Collectors.toList()));
-
   private String id;
   private LocalDateTime date;
   private Computer computer;
@@ -70,7 +66,7 @@ public class Order {
   }
 
   public void update() {
-    ((ComputerBase)this.computer).update();
+    this.computer.update();
     this.description = computer.getDescription();
     this.total = computer.getPrice();
     this.setDate(LocalDateTime.now());
@@ -104,12 +100,24 @@ public class Order {
     this.computer.setComponents(products);
   }
 
+  // product id -> quantity this order takes from stock, the base computer counts once.
+  // not a getter, so it stays out of the JSON
+  public Map<Integer, Integer> lines() {
+    Map<Integer, Integer> lines = new LinkedHashMap<>();
+    Product base = computer.getBase();
+    if (base != null)
+      lines.merge(base.getId(), 1, Integer::sum);
+    for (Product product : getProducts())
+      lines.merge(product.getId(), product.getQuantity(), Integer::sum);
+    return lines;
+  }
+
   @Override
   public String toString() {
     return String.format("OrderID@%s: %s $%.2f", this.id, this.description, this.total);
   }
 
   private static String getID() {
-    return Integer.toString(ids.remove(0));
+    return OrderIdGenerator.getInstance().next();
   }
 }
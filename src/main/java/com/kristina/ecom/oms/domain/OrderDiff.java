@@ -0,0 +1,73 @@
+package com.kristina.ecom.oms.domain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+// what changed between two versions of an order's lines (product id -> quantity),
+// one pass over each side with hash lookups instead of comparing the product lists
+public class OrderDiff {
+  private final Map<Integer, Integer> added = new LinkedHashMap<>();
+  private final Map<Integer, Integer> changed = new LinkedHashMap<>();
+  private final List<Integer> removed = new ArrayList<>();
+  // signed stock change, positive is taken from stock, negative goes back
+  private final Map<Integer, Integer> delta = new LinkedHashMap<>();
+
+  public OrderDiff(Map<Integer, Integer> before, Map<Integer, Integer> after) {
+    for (Map.Entry<Integer, Integer> line : after.entrySet()) {
+      Integer quantity = before.get(line.getKey());
+      if (quantity == null) {
+        added.put(line.getKey(), line.getValue());
+        delta.put(line.getKey(), line.getValue());
+      } else if (!quantity.equals(line.getValue())) {
+        changed.put(line.getKey(), line.getValue());
+        delta.put(line.getKey(), line.getValue() - quantity);
+      }
+    }
+    for (Map.Entry<Integer, Integer> line : before.entrySet()) {
+      if (!after.containsKey(line.getKey())) {
+        removed.add(line.getKey());
+        delta.put(line.getKey(), -line.getValue());
+      }
+    }
+  }
+
+  public static OrderDiff of(Order before, Order after) {
+    return new OrderDiff(before.lines(), after.lines());
+  }
+
+  public Map<Integer, Integer> getAdded() {
+    return added;
+  }
+
+  // new quantities of the lines that were already there
+  public Map<Integer, Integer> getChanged() {
+    return changed;
+  }
+
+  public List<Integer> getRemoved() {
+    return removed;
+  }
+
+  public Map<Integer, Integer> getDelta() {
+    return delta;
+  }
+
+  // the lines to insert or overwrite, added and changed together
+  public Map<Integer, Integer> upserts() {
+    Map<Integer, Integer> upserts = new LinkedHashMap<>(added);
+    upserts.putAll(changed);
+    return upserts;
+  }
+
+  public boolean isEmpty() {
+    return delta.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("OrderDiff: added %s, changed %s, removed %s", added, changed, removed);
+  }
+}
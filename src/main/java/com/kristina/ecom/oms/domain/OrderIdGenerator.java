@@ -0,0 +1,68 @@
+package com.kristina.ecom.oms.domain;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 63-bit, time ordered order ids, printed as 16 lowercase hex digits to fit porder.id char(16):
+//   41 bits  milliseconds since EPOCH (good for ~69 years)
+//   10 bits  node id, ORDER_NODE_ID from the environment or db.properties, unique per running instance
+//   12 bits  sequence within the millisecond
+// fixed width hex sorts like the number, so new rows land at the right end of the primary key.
+// lock-free: one CAS on the last (time, sequence) pair. when a millisecond runs out of sequence
+// numbers, or the clock steps back, the ids borrow from the next millisecond instead of waiting
+public class OrderIdGenerator {
+  private static final long EPOCH = 1735689600000L; // 2025-01-01T00:00:00Z
+  private static final int NODE_BITS = 10;
+  private static final int SEQUENCE_BITS = 12;
+  private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+  private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+  private static OrderIdGenerator instance = new OrderIdGenerator(node());
+
+  private final long node;
+  // (millis since EPOCH << SEQUENCE_BITS) | sequence of the last id handed out
+  private final AtomicLong last = new AtomicLong();
+
+  public OrderIdGenerator(long node) {
+    if (node < 0 || node > MAX_NODE)
+      throw new IllegalArgumentException("ORDER_NODE_ID must be between 0 and " + MAX_NODE + ": " + node);
+    this.node = node;
+  }
+
+  public static OrderIdGenerator getInstance() {
+    return instance;
+  }
+
+  public long nextLong() {
+    long now = (System.currentTimeMillis() - EPOCH) << SEQUENCE_BITS;
+    long prev, next;
+    do {
+      prev = last.get();
+      next = Math.max(now, prev + 1);
+    } while (!last.compareAndSet(prev, next));
+
+    return ((next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+      | (node << SEQUENCE_BITS)
+      | (next & SEQUENCE_MASK);
+  }
+
+  public String next() {
+    String hex = Long.toHexString(nextLong());
+    return "0".repeat(16 - hex.length()) + hex;
+  }
+
+  private static long node() {
+    String value = System.getenv("ORDER_NODE_ID");
+    if (value == null) {
+      Properties props = new Properties();
+      try {
+        props.load(OrderIdGenerator.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      value = props.getProperty("ORDER_NODE_ID", "0");
+    }
+    return Long.parseLong(value.trim());
+  }
+}
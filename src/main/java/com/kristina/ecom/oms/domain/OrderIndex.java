@@ -0,0 +1,150 @@
+package com.kristina.ecom.oms.domain;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+// every order kept sorted by total and by date, so top-K and range queries walk the
+// sorted sets instead of re-sorting the orders. the id breaks ties, so orders with the
+// same total or date are all kept. OrderService keeps it in step with create, update and cancel
+public class OrderIndex {
+  private static final OrderIndex instance = new OrderIndex();
+
+  // a null id sorts after every order, "" before, so they make the inclusive bounds of a range
+  private static final Comparator<String> ID = Comparator.nullsLast(Comparator.naturalOrder());
+  private static final Comparator<Entry> BY_TOTAL = Comparator.comparingDouble(Entry::total).thenComparing(Entry::id, ID);
+  private static final Comparator<Entry> BY_DATE = Comparator.comparing(Entry::date).thenComparing(Entry::id, ID);
+  private static final Comparator<Entry> BY_ID = Comparator.comparing(Entry::id, ID);
+
+  private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+  private final ConcurrentSkipListSet<Entry> byTotal = new ConcurrentSkipListSet<>(BY_TOTAL);
+  private final ConcurrentSkipListSet<Entry> byDate = new ConcurrentSkipListSet<>(BY_DATE);
+  private final ConcurrentSkipListSet<Entry> ids = new ConcurrentSkipListSet<>(BY_ID);
+  private volatile boolean loaded;
+
+  // what the index knows about an order
+  public record Entry(String id, LocalDateTime date, double total, String description) {
+    public static Entry of(Order order) {
+      return new Entry(order.getId(), order.getDate(), order.getTotal(), order.getDescription());
+    }
+  }
+
+  public static OrderIndex getInstance() {
+    return instance;
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  public void loaded() {
+    loaded = true;
+  }
+
+  public void clear() {
+    loaded = false;
+    byId.clear();
+    byTotal.clear();
+    byDate.clear();
+    ids.clear();
+  }
+
+  // adds the order, or moves it if it was already indexed
+  public void put(Order order) {
+    Entry entry = Entry.of(order);
+    Entry old = byId.put(entry.id(), entry);
+    if (old != null)
+      unlink(old);
+    byTotal.add(entry);
+    byDate.add(entry);
+    ids.add(entry);
+  }
+
+  public void remove(String id) {
+    Entry old = byId.remove(id);
+    if (old != null)
+      unlink(old);
+  }
+
+  public Entry get(String id) {
+    return byId.get(id);
+  }
+
+  public int size() {
+    return byId.size();
+  }
+
+  // the k most expensive orders
+  public List<Entry> topByTotal(int k) {
+    return first(byTotal.descendingSet(), k);
+  }
+
+  // the k most recent orders
+  public List<Entry> topByDate(int k) {
+    return first(byDate.descendingSet(), k);
+  }
+
+  // the k newest order ids (they are time ordered)
+  public List<Entry> topById(int k) {
+    return first(ids.descendingSet(), k);
+  }
+
+  // orders with min <= total <= max, cheapest first
+  public List<Entry> rangeByTotal(double min, double max, int limit) {
+    if (min > max)
+      return new ArrayList<>();
+    return first(byTotal.subSet(new Entry("", null, min, null), true, new Entry(null, null, max, null), true), limit);
+  }
+
+  // orders with from <= date < to, oldest first
+  public List<Entry> rangeByDate(LocalDateTime from, LocalDateTime to, int limit) {
+    if (!from.isBefore(to))
+      return new ArrayList<>();
+    return first(byDate.subSet(new Entry("", from, 0, null), true, new Entry("", to, 0, null), false), limit);
+  }
+
+  public List<Entry> rangeById(String from, String to, int limit) {
+    if (from.compareTo(to) > 0)
+      return new ArrayList<>();
+    return first(ids.subSet(new Entry(from, null, 0, null), true, new Entry(to, null, 0, null), true), limit);
+  }
+
+  // both at once, e.g. "between $500 and $2000 last week". the date range drives the walk
+  // when there is one, the total is checked on the way
+  public List<Entry> range(double min, double max, LocalDateTime from, LocalDateTime to, int limit) {
+    List<Entry> entries = new ArrayList<>();
+    if (from == null && to == null)
+      return rangeByTotal(min, max, limit);
+
+    NavigableSet<Entry> dates = byDate;
+    if (from != null)
+      dates = dates.tailSet(new Entry("", from, 0, null), true);
+    if (to != null)
+      dates = dates.headSet(new Entry("", to, 0, null), false);
+    for (Iterator<Entry> it = dates.iterator(); it.hasNext() && entries.size() < limit; ) {
+      Entry entry = it.next();
+      if (entry.total() >= min && entry.total() <= max)
+        entries.add(entry);
+    }
+    return entries;
+  }
+
+  private void unlink(Entry entry) {
+    byTotal.remove(entry);
+    byDate.remove(entry);
+    ids.remove(entry);
+  }
+
+  private static List<Entry> first(NavigableSet<Entry> entries, int k) {
+    List<Entry> first = new ArrayList<>(Math.min(Math.max(k, 0), 1024));
+    for (Iterator<Entry> it = entries.iterator(); it.hasNext() && first.size() < k; )
+      first.add(it.next());
+    return first;
+  }
+}
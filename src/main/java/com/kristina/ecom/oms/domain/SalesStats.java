@@ -0,0 +1,62 @@
+package com.kristina.ecom.oms.domain;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+// what the stats endpoint answers: totals, the most recent days and the best selling products
+public class SalesStats {
+  private final long orders;
+  private final double revenue;
+  private final double averageOrderValue;
+  private final Map<LocalDate, Day> daily;
+  private final Map<Integer, Long> unitsByProduct;
+
+  public SalesStats(long orders, double revenue, double averageOrderValue,
+                    Map<LocalDate, Day> daily, Map<Integer, Long> unitsByProduct) {
+    this.orders = orders;
+    this.revenue = revenue;
+    this.averageOrderValue = averageOrderValue;
+    this.daily = daily;
+    this.unitsByProduct = unitsByProduct;
+  }
+
+  public long getOrders() {
+    return orders;
+  }
+
+  public double getRevenue() {
+    return revenue;
+  }
+
+  public double getAverageOrderValue() {
+    return averageOrderValue;
+  }
+
+  // newest day first
+  public Map<LocalDate, Day> getDaily() {
+    return daily;
+  }
+
+  // product id -> units sold, best sellers first
+  public Map<Integer, Long> getUnitsByProduct() {
+    return unitsByProduct;
+  }
+
+  public static class Day {
+    private final long orders;
+    private final double revenue;
+
+    public Day(long orders, double revenue) {
+      this.orders = orders;
+      this.revenue = revenue;
+    }
+
+    public long getOrders() {
+      return orders;
+    }
+
+    public double getRevenue() {
+      return revenue;
+    }
+  }
+}
@@ -1,24 +1,26 @@
 package com.kristina.ecom.oms.domain;
 
+import java.util.Comparator;
 import java.util.List;
 
 import com.kristina.ecom.pms.domain.Computer;
 
-import java.util.Comparator;
-import java.util.Collections;
-
-public class SortByOrderID implements SortStrategy {
+public class SortByOrderID implements SortStrategy<String> {
+  private static final Comparator<Computer> BY_ID = Comparator.comparingInt(Computer::getId).reversed();
 
   @Override 
   public void sort(List<Computer> cart) {
+    cart.sort(BY_ID);
+  }
+
+  // order ids are time ordered, so these are the newest orders
+  @Override
+  public List<OrderIndex.Entry> top(OrderIndex index, int k) {
+    return index.topById(k);
+  }
 
-    Comparator<Computer> comparator = new Comparator<>() {
-      
-      @Override 
-      public int compare(Computer c1, Computer c2) {
-        return c2.getId() - c1.getId();
-      }
-    };
-    Collections.sort(cart, comparator);
+  @Override
+  public List<OrderIndex.Entry> range(OrderIndex index, String from, String to, int limit) {
+    return index.rangeById(from, to, limit);
   }
 }
@@ -1,21 +1,26 @@
 package com.kristina.ecom.oms.domain;
 
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
 import com.kristina.ecom.pms.domain.Computer;
 
-public class SortByPrice implements SortStrategy {
+public class SortByPrice implements SortStrategy<Double> {
+  // most expensive first, compared as doubles so prices less than 1 apart keep their order
+  private static final Comparator<Computer> BY_PRICE = Comparator.comparingDouble(Computer::getPrice).reversed();
 
   @Override 
   public void sort(List<Computer> cart) {
-    Comparator<Computer> comparator = new Comparator<>() {
-      @Override 
-      public int compare(Computer c1, Computer c2) {
-        return (int) (c2.getPrice() - c1.getPrice());
-      }
-    };
-    Collections.sort(cart, comparator);
+    cart.sort(BY_PRICE);
+  }
+
+  @Override
+  public List<OrderIndex.Entry> top(OrderIndex index, int k) {
+    return index.topByTotal(k);
+  }
+
+  @Override
+  public List<OrderIndex.Entry> range(OrderIndex index, Double from, Double to, int limit) {
+    return index.rangeByTotal(from, to, limit);
   }
 }
@@ -4,6 +4,14 @@ import java.util.List;
 
 import com.kristina.ecom.pms.domain.Computer;
 
-public interface SortStrategy {
+// K is the key the strategy orders by. top and range read the already sorted OrderIndex
+// instead of sorting a list on every call
+public interface SortStrategy<K> {
   void sort(List<Computer> cart);
+
+  // the k first orders in this strategy's order
+  List<OrderIndex.Entry> top(OrderIndex index, int k);
+
+  // orders with from <= key <= to, lowest key first
+  List<OrderIndex.Entry> range(OrderIndex index, K from, K to, int limit);
 }
@@ -1,49 +1,136 @@
 package com.kristina.ecom.oms.service;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.stream.Collectors;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import org.springframework.stereotype.Component;
 
 import java.util.List;
 
+import com.kristina.ecom.dao.AsyncDAO;
+import com.kristina.ecom.dao.AsyncDAOAdapter;
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.DAOFactory;
+import com.kristina.ecom.oms.dao.OrderArchive;
+import com.kristina.ecom.oms.dao.OrderDAO;
+import com.kristina.ecom.oms.dao.OrderDAOMySql;
+import com.kristina.ecom.oms.dao.OrderHistoryStore;
+import com.kristina.ecom.oms.dao.OrderQuery;
+import com.kristina.ecom.oms.dao.Outbox;
+import com.kristina.ecom.oms.dao.SalesRollup;
 import com.kristina.ecom.oms.domain.Order;
-import com.kristina.ecom.pms.domain.ComputerBase;
+import com.kristina.ecom.oms.domain.OrderDiff;
+import com.kristina.ecom.oms.domain.OrderIndex;
+import com.kristina.ecom.oms.domain.SalesStats;
+import com.kristina.ecom.oms.domain.SortByOrderID;
+import com.kristina.ecom.oms.domain.SortByPrice;
+import com.kristina.ecom.oms.domain.SortStrategy;
+import com.kristina.ecom.pms.dao.InsufficientStockException;
+import com.kristina.ecom.pms.dao.InventoryDAO;
+import com.kristina.ecom.pms.dao.InventoryDAOMySql;
 import com.kristina.ecom.pms.domain.Product;
-import com.kristina.ecom.pms.service.ProductService;
 
 @Component
 public class OrderService {
+  // upper bound for a page requested through the web layer
+  public static final int MAX_PAGE = 500;
+
   private DAO<String, Order> dao; // interface
-  private DAO<Integer, Product> daoP;
+  private DAO<Integer, Product> products;
+  private InventoryDAO inventory;
+  private AsyncDAO<String, Order> async;
+  private OutboxDispatcher outbox;
 
   public OrderService() {
     dao = DAOFactory.getInstance().create(DAO.Type.ORDER_DAO);
-    daoP = DAOFactory.getInstance().create(DAO.Type.PRODUCT_DAO);
+    products = DAOFactory.getInstance().create(DAO.Type.PRODUCT_DAO);
+    inventory = new InventoryDAOMySql();
+    async = new AsyncDAOAdapter<>(dao);
+    outbox = OutboxDispatcher.getInstance();
   }
 
+  // all lines and the base computer come out of stock with the order, or nothing does
   public Order create(Order order) throws DAOException {
-    if (new ComputerBase().getBase().getQuantity() <= 0 ) {
-      throw new DAOException("Insufficient stock for base computer "  , new Exception());
-    }
-    
-    for (Product product : order.getProducts()) {
-      Product stock = daoP.read(product.getId());
-      if (stock.getQuantity() < product.getQuantity()) {
-        throw new DAOException("Insufficient stock for product: " + product.getName(), new Exception());
+    if (dao.isWrapperFor(OrderDAOMySql.class)) {
+      // reserved inside the order's own transaction, the sales delta waits in the outbox
+      dao.create(order);
+      outbox.wake();
+    } else {
+      List<Integer> failed = inventory.reserve(order.lines());
+      if (!failed.isEmpty())
+        throw new InsufficientStockException(failed);
+      // the reservation isn't part of the order's transaction (MONGO, SHARDED), give it back by hand
+      try {
+        dao.create(order);
+      } catch (DAOException | RuntimeException ex) {
+        inventory.restock(order.lines());
+        throw ex;
       }
     }
+    evictStock(order.lines().keySet());
+    OrderIndex.getInstance().put(order);
+    return order;
+  }
 
-    for (Product product : order.getProducts()) {
-      Product stock = daoP.read(product.getId());
-      stock.setQuantity(stock.getQuantity() - product.getQuantity());
-      daoP.update(stock);
+  public List<Order> checkout(List<Order> orders) throws DAOException {
+    return checkout(orders, List.of());
+  }
+
+  // a whole cart at once: one stock check for every line, then all orders and their lines
+  // go in with one reservation, or none of them do. the events run after the commit
+  public List<Order> checkout(List<Order> orders, List<Outbox.Event> events) throws DAOException {
+    Map<Integer, Integer> total = new TreeMap<>();
+    for (Order order : orders)
+      order.lines().forEach((pid, quantity) -> total.merge(pid, quantity, Integer::sum));
+    if (total.isEmpty())
+      return orders;
+
+    // fail fast on what is visibly short, the reservation below still has the last word
+    List<Integer> failed = new ArrayList<>(total.keySet());
+    for (Product product : products.readMany(new ArrayList<>(total.keySet()))) {
+      if (product.getQuantity() >= total.get(product.getId()))
+        failed.remove(Integer.valueOf(product.getId()));
     }
-    
-    return dao.create(order);
+    if (!failed.isEmpty())
+      throw new InsufficientStockException(failed);
+
+    if (dao.isWrapperFor(OrderDAOMySql.class)) {
+      // reserved inside the same transaction as the inserts, the rest waits in the outbox
+      dao.unwrap(OrderDAOMySql.class).createAll(orders, events);
+      outbox.wake();
+    } else {
+      failed = inventory.reserve(total);
+      if (!failed.isEmpty())
+        throw new InsufficientStockException(failed);
+      try {
+        dao.createAll(orders);
+      } catch (DAOException | RuntimeException ex) {
+        inventory.restock(total);
+        throw ex;
+      }
+      evictStock(total.keySet());
+      // the orders are in, a failed event must not fail the checkout
+      for (Outbox.Event event : events) {
+        try {
+          outbox.handle(event);
+        } catch (DAOException | RuntimeException ex) {
+          ex.printStackTrace();
+        }
+      }
+    }
+    for (Order order : orders)
+      OrderIndex.getInstance().put(order);
+    return orders;
   }
 
   public List<Order> getAll() {
@@ -57,6 +144,71 @@ public class OrderService {
     return orders;
   }
 
+  // one keyset page, pass the id of the last order of the previous page (or null)
+  public List<Order> getPage(String after, int limit) {
+    List<Order> orders = new ArrayList<>();
+    try {
+      orders = dao.readPage(after, Math.max(1, Math.min(limit, MAX_PAGE)));
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+
+    return orders;
+  }
+
+  // filtered, sorted and keyset paged, continue with query.cursorOf(last order of the page)
+  public List<Order> getPage(OrderQuery query, boolean hydrate) {
+    List<Order> orders = new ArrayList<>();
+    query = query.withLimit(Math.max(1, Math.min(query.getLimit(), MAX_PAGE)));
+    try {
+      if (dao.isWrapperFor(OrderDAO.class))
+        orders = dao.unwrap(OrderDAO.class).readPage(query);
+      else
+        orders = dao.readPage(query.getAfter(), query.getLimit());
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+
+    return hydrate ? hydrate(orders) : orders;
+  }
+
+  // loads the products of every order of the page in bulk
+  private List<Order> hydrate(List<Order> orders) {
+    if (orders.isEmpty())
+      return orders;
+
+    try {
+      if (dao.isWrapperFor(OrderDAOMySql.class)) {
+        dao.unwrap(OrderDAOMySql.class).hydrate(orders);
+      } else {
+        List<String> ids = new ArrayList<>();
+        for (Order order : orders)
+          ids.add(order.getId());
+        // back in page order
+        Map<String, Order> loaded = new HashMap<>();
+        for (Order order : dao.readMany(ids))
+          loaded.put(order.getId(), order);
+        List<Order> hydrated = new ArrayList<>();
+        for (Order order : orders)
+          hydrated.add(loaded.getOrDefault(order.getId(), order));
+        orders = hydrated;
+      }
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+
+    return orders;
+  }
+
+  // visits every order without holding them all in memory
+  public void forEach(Consumer<Order> action) {
+    try (Stream<Order> orders = dao.stream()) {
+      orders.forEach(action);
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+  }
+
   public Order get(String id) {
     Order order = null;
     try {
@@ -68,10 +220,22 @@ public class OrderService {
     return order;
   }
 
+  // get(id) on a virtual thread
+  public CompletableFuture<Order> getAsync(String id) {
+    return async.read(id)
+      .exceptionally(ex -> {
+        ex.printStackTrace();
+        return null;
+      });
+  }
+
   public int delete(String id) {
     int rows = 0;
     try {
       rows = dao.delete(id);
+      outbox.wake();
+      if (rows > 0)
+        OrderIndex.getInstance().remove(id);
     } catch (DAOException ex) {
       ex.printStackTrace();
     }
@@ -81,14 +245,20 @@ public class OrderService {
   public int cancel(String id) {
     int rows = 0;
     try {
-      ProductService pService  = new ProductService();
-      dao.read(id).getProducts().forEach(p -> {
-        Product product = pService.get(p.getId());
-        product.setQuantity(product.getQuantity() + p.getQuantity());
-        pService.update(product);
-      });
-
-      rows = dao.delete(id);
+      // read first for the products whose cached stock goes stale
+      Order order = dao.read(id);
+      if (order == null)
+        return 0;
+      if (dao.isWrapperFor(OrderDAOMySql.class)) {
+        rows = dao.unwrap(OrderDAOMySql.class).cancel(id);
+        outbox.wake();
+      } else {
+        inventory.restock(order.lines());
+        rows = dao.delete(id);
+      }
+      evictStock(order.lines().keySet());
+      if (rows > 0)
+        OrderIndex.getInstance().remove(id);
     } catch ( DAOException ex) {
       System.out.println("Error cancelling the order");
     }
@@ -97,31 +267,75 @@ public class OrderService {
 
   public boolean update(Order order) {
     try {
-        Order oldOrder = dao.read(order.getId());
-        Product  productFromStock;
-        int difference;
-        List<Product> oldProducts = oldOrder.getProducts();
-        List<Product> newOrderProducts = order.getProducts();
-        List<Product> commonProducts = newOrderProducts.stream().filter(p -> oldProducts.contains(p)).collect(Collectors.toList());
-        List<Product> onlyOldOrder = oldProducts.stream().filter(p -> !newOrderProducts.contains(p)).collect(Collectors.toList());
-        List<Product> onlyNewOrder = newOrderProducts.stream().filter(p -> !oldProducts.contains(p)).collect(Collectors.toList());
-        // update existing product or add new product 
-        commonProducts.addAll(onlyNewOrder);
-        for (Product product : commonProducts) {
-          difference = product.getQuantity() - getProductQuantityById(oldProducts, product.getId());
-          productFromStock = daoP.read(product.getId());
-          productFromStock.setQuantity(productFromStock.getQuantity() - difference);
-          daoP.update(productFromStock);
+      order.update();
+      Order stored = dao.read(order.getId());
+      if (stored == null)
+        return false;
+      if (dao.isWrapperFor(OrderDAOMySql.class)) {
+        dao.unwrap(OrderDAOMySql.class).amend(order);
+        outbox.wake();
+      } else {
+        // reserve only the difference, a negative quantity goes back to stock
+        OrderDiff diff = OrderDiff.of(stored, order);
+        List<Integer> failed = inventory.reserve(diff.getDelta());
+        if (!failed.isEmpty())
+          throw new InsufficientStockException(failed);
+        try {
+          dao.update(order);
+        } catch (DAOException | RuntimeException ex) {
+          inventory.restock(diff.getDelta());
+          throw ex;
         }
-        // delete product from order, increase the stock
-        for (Product product : onlyOldOrder) {
-          productFromStock = daoP.read(product.getId());
-          productFromStock.setQuantity(productFromStock.getQuantity() + product.getQuantity());
-          daoP.update(productFromStock);
-          }
+      }
+      // the stock changed for the products of both versions
+      Set<Integer> touched = new HashSet<>(stored.lines().keySet());
+      touched.addAll(order.lines().keySet());
+      evictStock(touched);
+      OrderIndex.getInstance().put(order);
+      return true;
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+      return false;
+    }
+  }
 
-      order.update();
-      dao.update(order);
+  // the k first orders by total, date or id, from the order index
+  public List<OrderIndex.Entry> top(OrderQuery.Sort by, int k) {
+    k = Math.max(0, Math.min(k, MAX_PAGE));
+    return switch (by) {
+      case TOTAL -> top(new SortByPrice(), k);
+      case ID -> top(new SortByOrderID(), k);
+      case DATE -> index().topByDate(k);
+    };
+  }
+
+  public List<OrderIndex.Entry> top(SortStrategy<?> strategy, int k) {
+    return strategy.top(index(), k);
+  }
+
+  // orders with min <= total <= max and from <= date < to (either date may be null), oldest first
+  public List<OrderIndex.Entry> range(double min, double max, LocalDateTime from, LocalDateTime to, int limit) {
+    return index().range(min, max, from, to, Math.max(0, Math.min(limit, MAX_PAGE)));
+  }
+
+  public <K> List<OrderIndex.Entry> range(SortStrategy<K> strategy, K from, K to, int limit) {
+    return strategy.range(index(), from, to, Math.max(0, Math.min(limit, MAX_PAGE)));
+  }
+
+  // sales totals, the last [days] days and the [top] best selling products, from the rollups
+  public SalesStats stats(int days, int top) {
+    try {
+      return SalesRollup.getInstance().stats(days, top);
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+    return null;
+  }
+
+  // recomputes the rollups from the orders, for after a restore or a manual fix in the tables
+  public boolean rebuildStats() {
+    try {
+      SalesRollup.getInstance().rebuild();
       return true;
     } catch (DAOException ex) {
       ex.printStackTrace();
@@ -129,12 +343,63 @@ public class OrderService {
     }
   }
 
-  // get the product quantity by its id in the oder 
-  private int getProductQuantityById(List<Product> products, int id){
-    for (Product p : products) 
-      if (p.getId()==id)
-        return p.getQuantity();
+  // reports over the closed orders, from the history files instead of the db
+  public SalesStats history(LocalDateTime from, LocalDateTime to, OrderHistoryStore.Period period, int top) {
+    try {
+      return OrderHistoryStore.getInstance().stats(from, to, period, top);
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+    return null;
+  }
+
+  public Map<String, Long> historyDescriptions(LocalDateTime from, LocalDateTime to, int top) {
+    try {
+      return OrderHistoryStore.getInstance().descriptions(from, to, top);
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+    }
+    return null;
+  }
+
+  // rewrites the history files from the db, returns the number of orders in them
+  public int rebuildHistory() {
+    try {
+      return OrderHistoryStore.getInstance().rebuild();
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+      return 0;
+    }
+  }
+
+  // moves the orders older than ARCHIVE_AFTER_DAYS to the archive tables now instead of
+  // waiting for the scheduled run, returns how many were moved
+  public int archive() {
+    try {
+      return OrderArchive.getInstance().archive();
+    } catch (DAOException ex) {
+      ex.printStackTrace();
+      return 0;
+    }
+  }
 
-    return 0; 
-  } 
+  // the shared order index, filled from the orders on first use
+  private OrderIndex index() {
+    OrderIndex index = OrderIndex.getInstance();
+    if (!index.isLoaded()) {
+      synchronized (index) {
+        if (!index.isLoaded()) {
+          forEach(index::put);
+          index.loaded();
+        }
+      }
+    }
+    return index;
+  }
+
+  // the stock changed behind the product DAO's back
+  private void evictStock(Collection<Integer> ids) {
+    for (Integer id : ids)
+      DAOFactory.getInstance().evict(DAO.Type.PRODUCT_DAO, id);
+  }
 }
@@ -0,0 +1,204 @@
+package com.kristina.ecom.oms.service;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.cart.dao.ShoppingCartDAOMongo;
+import com.kristina.ecom.dao.DAO;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DAOFactory;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.oms.dao.Outbox;
+import com.kristina.ecom.oms.dao.SalesRollup;
+
+// drains the outbox: claims OUTBOX_BATCH_SIZE events, runs each on its own virtual thread and
+// waits for the batch, then claims the next. the SALES events of a batch all add to the same
+// rollup rows, they are merged into one delta and applied by a single handler. sleeps OUTBOX_POLL_MS when the outbox is empty,
+// a checkout wakes it up right after its commit. a handler that fails leaves its row leased,
+// it is retried when the lease runs out. every handler can run twice without harm:
+//   SALES          the rows are deleted in the transaction that applies the delta, a row a
+//                  second run no longer finds is left out of it
+//   EVICT_STOCK    evicting twice is evicting
+//   CART_COMPLETED moves the cart from COMPLETING to COMPLETED only, then evicts the cached cart
+public class OutboxDispatcher {
+  private static OutboxDispatcher instance;
+
+  private final Outbox outbox;
+  private final DataSource datasource;
+  private final int batch;
+  private final long poll;
+  private DAO<String, ?> carts;
+  private Thread thread;
+
+  public OutboxDispatcher(Outbox outbox, DataSource datasource, int batch, long poll) {
+    this.outbox = outbox;
+    this.datasource = datasource;
+    this.batch = batch;
+    this.poll = poll;
+  }
+
+  public static synchronized OutboxDispatcher getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(OutboxDispatcher.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+      instance = new OutboxDispatcher(Outbox.getInstance(), DataSourceFactory.instance().getDataSource(),
+        Integer.parseInt(props.getProperty("OUTBOX_BATCH_SIZE", "100").trim()),
+        Long.parseLong(props.getProperty("OUTBOX_POLL_MS", "1000").trim()));
+      instance.start();
+    }
+    return instance;
+  }
+
+  // something was just added, don't wait for the next poll
+  public void wake() {
+    Thread current = thread;
+    if (current != null)
+      LockSupport.unpark(current);
+  }
+
+  // claims and runs one batch, returns its size
+  public int drain() throws DAOException {
+    List<Outbox.Event> events = outbox.claim(batch);
+    if (events.isEmpty())
+      return 0;
+
+    List<Outbox.Event> sales = new ArrayList<>();
+    // close() waits for every handler of the batch
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (Outbox.Event event : events) {
+        if (event.type() == Outbox.Type.SALES) {
+          sales.add(event);
+          continue;
+        }
+        executor.submit(() -> {
+          try {
+            handle(event);
+          } catch (DAOException | RuntimeException ex) {
+            ex.printStackTrace();
+          }
+        });
+      }
+      if (!sales.isEmpty()) {
+        executor.submit(() -> {
+          try {
+            sales(sales);
+          } catch (DAOException | RuntimeException ex) {
+            ex.printStackTrace();
+          }
+        });
+      }
+    }
+    return events.size();
+  }
+
+  // also called directly, with an event that was never stored (id 0), by the order backends
+  // without a SQL transaction to put the event in
+  public void handle(Outbox.Event event) throws DAOException {
+    switch (event.type()) {
+      case SALES:
+        sales(List.of(event));
+        return;
+      case EVICT_STOCK:
+        for (String id : event.payload().split(",")) {
+          if (!id.isEmpty())
+            DAOFactory.getInstance().evict(DAO.Type.PRODUCT_DAO, Integer.valueOf(id));
+        }
+        break;
+      case CART_COMPLETED:
+        String[] cart = event.payload().split("\\|", -1);
+        carts().unwrap(ShoppingCartDAOMongo.class).complete(cart[0]);
+        if (!cart[1].isEmpty())
+          DAOFactory.getInstance().evict(DAO.Type.SHOPPING_CART_DAO, cart[1]);
+        break;
+    }
+    if (event.id() != 0)
+      outbox.done(event.id());
+  }
+
+  private synchronized DAO<String, ?> carts() throws DAOException {
+    if (carts == null)
+      carts = DAOFactory.getInstance().create(DAO.Type.SHOPPING_CART_DAO);
+    return carts;
+  }
+
+  // one transaction for the whole batch. a payload that doesn't decode stays leased and is
+  // retried on its own until it is marked dead, the rest of the batch goes through
+  private void sales(List<Outbox.Event> events) throws DAOException {
+    SalesRollup rollup = SalesRollup.getInstance();
+    List<Outbox.Event> stored = new ArrayList<>();
+    List<SalesRollup.Delta> deltas = new ArrayList<>();
+    for (Outbox.Event event : events) {
+      if (event.id() == 0) {
+        rollup.record(SalesRollup.Delta.decode(event.payload()));
+        continue;
+      }
+      try {
+        deltas.add(SalesRollup.Delta.decode(event.payload()));
+        stored.add(event);
+      } catch (RuntimeException ex) {
+        ex.printStackTrace();
+      }
+    }
+    if (stored.isEmpty())
+      return;
+
+    SalesRollup.Delta delta = new SalesRollup.Delta();
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        // a row another dispatcher already finished is not applied twice
+        int found = 0;
+        for (int i = 0; i < stored.size(); i++) {
+          if (outbox.done(conn, stored.get(i).id()) == 1) {
+            delta.merge(deltas.get(i));
+            found++;
+          }
+        }
+        if (found == 0) {
+          conn.rollback();
+          return;
+        }
+        rollup.record(conn, delta);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    rollup.committed(delta);
+  }
+
+  private void start() {
+    thread = new Thread(() -> {
+      while (!Thread.currentThread().isInterrupted()) {
+        int drained = 0;
+        try {
+          drained = drain();
+        } catch (DAOException ex) {
+          ex.printStackTrace();
+        }
+        // a full batch means there is probably more
+        if (drained < batch)
+          LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(poll));
+      }
+    }, "outbox-dispatcher");
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -1,18 +1,24 @@
 package com.kristina.ecom.oms.web;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ModelAttribute;
 
+import com.kristina.ecom.oms.dao.OrderQuery;
 import com.kristina.ecom.oms.domain.Order;
 import com.kristina.ecom.oms.service.OrderService;
+import com.kristina.ecom.pms.domain.Product;
 import com.kristina.ecom.pms.service.ProductService;
 
 import org.springframework.ui.Model;
@@ -38,11 +44,31 @@ public class OmsController {
     }
 
     @GetMapping("all")
-    public String getAllOrders(Model model) {
+    public String getAllOrders(Model model,
+                               @RequestParam(required = false) String after,
+                               @RequestParam(defaultValue = "50") int limit,
+                               @RequestParam(defaultValue = "false") boolean hydrate,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                               @RequestParam(defaultValue = "DATE") OrderQuery.Sort sort,
+                               @RequestParam(defaultValue = "true") boolean desc) {
         List<Order> orders = new ArrayList<>();
+        limit = Math.max(1, Math.min(limit, OrderService.MAX_PAGE));
 
-        orders = orderService.getAll();
+        // the "to" day is included
+        OrderQuery query = new OrderQuery(from == null ? null : from.atStartOfDay(),
+                                          to == null ? null : to.plusDays(1).atStartOfDay(),
+                                          sort, desc, after, limit);
+        orders = orderService.getPage(query, hydrate);
         model.addAttribute("orders", orders);
+        model.addAttribute("limit", limit);
+        model.addAttribute("hydrate", hydrate);
+        model.addAttribute("from", from);
+        model.addAttribute("to", to);
+        model.addAttribute("sort", sort);
+        model.addAttribute("desc", desc);
+        // a full page means there may be more, the next one starts after its last order
+        model.addAttribute("next", orders.size() == limit ? query.cursorOf(orders.get(orders.size() - 1)) : null);
 
         return "oms/orders"; // orders.html
     }
@@ -55,9 +81,11 @@ public class OmsController {
 
     @GetMapping("update/{id}")
     public String updateOrder(Model model, @PathVariable String id) {
-        Order order = orderService.get(id);
-        model.addAttribute("order", order);
-        model.addAttribute("products", productService.getAll());
+        // the order and the product list don't depend on each other, load them side by side
+        CompletableFuture<Order> order = orderService.getAsync(id);
+        CompletableFuture<List<Product>> products = productService.getAllAsync();
+        model.addAttribute("order", order.join());
+        model.addAttribute("products", products.join());
 
         return "oms/update";
     }
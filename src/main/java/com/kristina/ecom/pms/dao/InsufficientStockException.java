@@ -0,0 +1,20 @@
+package com.kristina.ecom.pms.dao;
+
+import java.util.List;
+
+import com.kristina.ecom.dao.DAOException;
+
+// a reservation was refused, nothing was taken from stock
+public class InsufficientStockException extends DAOException {
+  private final List<Integer> failed;
+
+  public InsufficientStockException(List<Integer> failed) {
+    super("Insufficient stock for products: " + failed, new Exception());
+    this.failed = failed;
+  }
+
+  // ids of the products that didn't have enough stock
+  public List<Integer> getFailed() {
+    return failed;
+  }
+}
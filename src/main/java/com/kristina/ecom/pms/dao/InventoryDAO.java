@@ -0,0 +1,14 @@
+package com.kristina.ecom.pms.dao;
+
+import java.util.List;
+import java.util.Map;
+
+import com.kristina.ecom.dao.DAOException;
+
+// stock adjustments keyed by product id -> quantity
+public interface InventoryDAO {
+  // takes every line from stock or none of them, returns the ids that were short (empty on success).
+  // a negative quantity puts stock back, so a reservation can also apply the difference between two orders
+  List<Integer> reserve(Map<Integer, Integer> lines) throws DAOException;
+  int restock(Map<Integer, Integer> lines) throws DAOException;
+}
@@ -0,0 +1,186 @@
+package com.kristina.ecom.pms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// set-based stock changes. the decrement only applies when there is enough stock, so concurrent
+// checkouts can't oversell, and the whole batch goes out in one round trip.
+// the Connection variants join the caller's transaction and leave commit/rollback to it
+public class InventoryDAOMySql implements InventoryDAO {
+
+  private DataSource datasource;
+  // hot SKUs keep their stock in stripes instead of the product row
+  private StockShards shards;
+
+  public InventoryDAOMySql() {
+    this(StockShards.getInstance());
+  }
+
+  public InventoryDAOMySql(StockShards shards) {
+    this.datasource = DataSourceFactory.instance().getDataSource();
+    this.shards = shards;
+  }
+
+  @Override
+  public List<Integer> reserve(Map<Integer, Integer> lines) throws DAOException {
+    List<Integer> failed = new ArrayList<>();
+    if (lines.isEmpty())
+      return failed;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        failed = reserve(conn, lines);
+        if (failed.isEmpty())
+          conn.commit();
+        else
+          conn.rollback();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return failed;
+  }
+
+  @Override
+  public int restock(Map<Integer, Integer> lines) throws DAOException {
+    int rows = 0;
+    if (lines.isEmpty())
+      return rows;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        rows = restock(conn, lines);
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return rows;
+  }
+
+  // returns the ids that were short, the caller must roll back if there are any
+  public List<Integer> reserve(Connection conn, Map<Integer, Integer> lines) throws SQLException {
+    String query = "UPDATE product SET quantity = quantity - ? WHERE id = ? AND quantity >= ?";
+    List<Integer> failed = new ArrayList<>();
+    // always lock the rows in id order, so two reservations can't deadlock each other
+    List<Integer> ids = new ArrayList<>();
+
+    Map<Integer, Integer> hot = new TreeMap<>();
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      for (Map.Entry<Integer, Integer> line : new TreeMap<>(lines).entrySet()) {
+        if (line.getValue() == 0)
+          continue;
+        if (shards.isHot(line.getKey())) {
+          hot.put(line.getKey(), line.getValue());
+          continue;
+        }
+        stat.setInt(1, line.getValue());
+        stat.setInt(2, line.getKey());
+        stat.setInt(3, line.getValue());
+        stat.addBatch();
+        ids.add(line.getKey());
+      }
+
+      if (!ids.isEmpty()) {
+        int[] counts = stat.executeBatch();
+        for (int i = 0; i < counts.length; i++) {
+          if (counts[i] == 0)
+            failed.add(ids.get(i));
+        }
+      }
+    }
+
+    // the stripes are taken after the product rows, same order in every transaction
+    for (Map.Entry<Integer, Integer> line : hot.entrySet()) {
+      if (line.getValue() < 0)
+        shards.restock(conn, line.getKey(), -line.getValue());
+      else if (!shards.reserve(conn, line.getKey(), line.getValue()))
+        failed.add(line.getKey());
+    }
+    return failed;
+  }
+
+  public int restock(Connection conn, Map<Integer, Integer> lines) throws SQLException {
+    String query = "UPDATE product SET quantity = quantity + ? WHERE id = ?";
+    int rows = 0;
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      boolean cold = false;
+      for (Map.Entry<Integer, Integer> line : new TreeMap<>(lines).entrySet()) {
+        if (shards.isHot(line.getKey())) {
+          shards.restock(conn, line.getKey(), line.getValue());
+          rows++;
+          continue;
+        }
+        stat.setInt(1, line.getValue());
+        stat.setInt(2, line.getKey());
+        stat.addBatch();
+        cold = true;
+      }
+      if (cold)
+        rows += UtilDAOSql.rows(stat.executeBatch());
+    }
+    return rows;
+  }
+
+  // puts back everything an order took, straight from its orderDetails rows
+  public int restock(Connection conn, String orderId) throws SQLException {
+    Set<Integer> hot = shards.getHot();
+    String notHot = hot.isEmpty() ? "" : " AND orderDetails.pid NOT IN (" + UtilDAOSql.placeholders(hot.size()) + ")";
+    String query = "UPDATE product JOIN orderDetails ON orderDetails.pid = product.id " +
+                   "SET product.quantity = product.quantity + orderDetails.quantity " +
+                   "WHERE orderDetails.oid = ?" + notHot;
+    int rows = 0;
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      int i = 1;
+      stat.setString(i++, orderId);
+      for (Integer pid : hot)
+        stat.setInt(i++, pid);
+      rows = stat.executeUpdate();
+    }
+    if (hot.isEmpty())
+      return rows;
+
+    // the hot SKUs of the order go back onto their stripes
+    String hotQuery = "SELECT pid, quantity FROM orderDetails WHERE oid = ? AND pid IN (" + UtilDAOSql.placeholders(hot.size()) + ")";
+    Map<Integer, Integer> lines = new TreeMap<>();
+    try (PreparedStatement stat = conn.prepareStatement(hotQuery)) {
+      int i = 1;
+      stat.setString(i++, orderId);
+      for (Integer pid : hot)
+        stat.setInt(i++, pid);
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next())
+          lines.put(rs.getInt(1), rs.getInt(2));
+      }
+    }
+    for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+      shards.restock(conn, line.getKey(), line.getValue());
+      rows++;
+    }
+    return rows;
+  }
+}
@@ -1,9 +1,13 @@
 package com.kristina.ecom.pms.dao;
 
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Sorts.ascending;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -18,6 +22,9 @@ import com.mongodb.MongoException;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -27,7 +34,7 @@ public class ProductDAOMongo implements DAO<String, Product> {
 
   public ProductDAOMongo() {
     this.dataSourceFactory = MongoDataSourceFactory.getInstance();
-    this.collection = dataSourceFactory.getDatabase().getCollection("products");
+    this.collection = dataSourceFactory.getCollection("products");
   }
 
   @Override
@@ -72,6 +79,25 @@ public class ProductDAOMongo implements DAO<String, Product> {
     return products;
   }
 
+  @Override
+  public List<Product> readPage(String after, int limit) throws DAOException {
+    List<Product> products = new ArrayList<>();
+    // products are stored under their numeric id, ObjectIds only for documents created without one
+    Bson query = after == null ? new Document() : gt("_id", ObjectId.isValid(after) ? new ObjectId(after) : Integer.valueOf(after));
+    try {
+      for (Document document : collection.find(query).sort(ascending("_id")).limit(limit))
+        products.add(UtilDAOMongo.toProduct(document));
+    } catch (MongoException ex) {
+      throw new DAOException("Product read error", ex);
+    }
+    return products;
+  }
+
+  @Override
+  public Stream<Product> stream() throws DAOException {
+    return UtilDAOMongo.stream(collection.find(), UtilDAOMongo::toProduct);
+  }
+
   @Override
   public int update(Product product) throws DAOException {
     if (product == null)
@@ -95,5 +121,67 @@ public class ProductDAOMongo implements DAO<String, Product> {
       throw new DAOException("Product delete error", ex);
     }
   }
-}
 
+  @Override
+  public List<Product> createAll(List<Product> products) throws DAOException {
+    if (products.isEmpty())
+      return products;
+
+    try {
+      List<Document> documents = new ArrayList<>();
+      for (Product product : products)
+        documents.add(UtilDAOMongo.toDocument(product));
+      collection.insertMany(documents);
+      return products;
+    } catch (MongoException ex) {
+      throw new DAOException("Product creation error", ex);
+    }
+  }
+
+  @Override
+  public List<Product> readMany(List<String> ids) throws DAOException {
+    List<Product> products = new ArrayList<>();
+    List<ObjectId> objectIds = new ArrayList<>();
+    for (String id : ids)
+      objectIds.add(new ObjectId(id));
+
+    try {
+      for (Document document : collection.find(in("_id", objectIds)))
+        products.add(UtilDAOMongo.toProduct(document));
+    } catch (MongoException ex) {
+      throw new DAOException("Product read error", ex);
+    }
+    return products;
+  }
+
+  @Override
+  public int updateAll(List<Product> products) throws DAOException {
+    if (products.isEmpty())
+      return 0;
+
+    List<WriteModel<Document>> updates = new ArrayList<>();
+    for (Product product : products)
+      updates.add(new ReplaceOneModel<>(eq("_id", product.getId()), UtilDAOMongo.toDocument(product)));
+
+    try {
+      BulkWriteResult result = collection.bulkWrite(updates);
+      return result.getModifiedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Product update error.", ex);
+    }
+  }
+
+  @Override
+  public int deleteAll(List<String> ids) throws DAOException {
+    List<ObjectId> objectIds = new ArrayList<>();
+    for (String id : ids)
+      objectIds.add(new ObjectId(id));
+
+    try {
+      DeleteResult result = collection.deleteMany(in("_id", objectIds));
+      return (int) result.getDeletedCount();
+    } catch (MongoException ex) {
+      throw new DAOException("Product delete error", ex);
+    }
+  }
+}
@@ -5,6 +5,7 @@ import javax.sql.DataSource;
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.UtilDAOSql;
 import com.kristina.ecom.pms.domain.Product;
 
 import java.util.List;
@@ -13,103 +14,121 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.stream.Stream;
 import java.sql.PreparedStatement;
 
 public class ProductDAOMySql implements DAO<Integer, Product> {
 
   private DataSource datasource;
+  private DataSource replica; // reads, see DataSourceFactory.getReadDataSource
+  private StockShards shards;
 
   public ProductDAOMySql() {
     this.datasource = DataSourceFactory.instance().getDataSource();
+    this.replica = DataSourceFactory.instance().getReadDataSource();
+    this.shards = StockShards.getInstance();
   }
 
   @Override
   public Product create(Product product) throws DAOException {
-    
-    try {
-    Connection conn = datasource.getConnection();
     String query = "INSERT INTO product (type, name, price, quantity, image) VALUES(? ,?, ?, ?, ?)";
 
-    PreparedStatement stat = conn.prepareStatement(query);
-    stat.setString(1, product.getType());
-    stat.setString(2, product.getName());
-    stat.setDouble(3, product.getPrice());
-    stat.setInt(4, product.getQuantity());
-    stat.setString(5, product.getImg());
-    stat.executeUpdate();
-
-    conn.close();
-  } catch (SQLException ex) {
-    throw new DAOException("Error in DAO", ex);
-  }
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setString(1, product.getType());
+      stat.setString(2, product.getName());
+      stat.setDouble(3, product.getPrice());
+      stat.setInt(4, product.getQuantity());
+      stat.setString(5, product.getImg());
+      stat.executeUpdate();
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
     return product;
   }
 
   @Override
   public List<Product> readAll() throws DAOException {
     List<Product> products = new ArrayList<>();
-
-    try {
-    Connection conn = datasource.getConnection();
     String query = "SELECT * FROM product";
-    Statement stat = conn.createStatement();
-    ResultSet rs = stat.executeQuery(query);
+
+    try (Connection conn = replica.getConnection();
+         Statement stat = conn.createStatement();
+         ResultSet rs = stat.executeQuery(query)) {
       while (rs.next()) {
-        Product product = new Product(rs.getInt(1), 
-                                      rs.getString(2), 
-                                      rs.getString(3), 
-                                      rs.getDouble(4), 
-                                      rs.getInt(5), 
-                                      rs.getString(6)
-                                      );
-        products.add(product);
+        products.add(toProduct(rs));
       }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return products;
+  }
 
-      conn.close();
+  @Override
+  public List<Product> readPage(Integer after, int limit) throws DAOException {
+    List<Product> products = new ArrayList<>();
+    String query = "SELECT * FROM product WHERE id > ? ORDER BY id LIMIT ?";
+
+    try (Connection conn = replica.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setInt(1, after == null ? 0 : after);
+      stat.setInt(2, limit);
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next())
+          products.add(toProduct(rs));
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
-      return products;
+    return products;
+  }
+
+  @Override
+  public Stream<Product> stream() throws DAOException {
+    return UtilDAOSql.stream(replica, "SELECT * FROM product", this::toProduct);
   }
 
   @Override
   public Product read(Integer id) throws DAOException {
     Product product = null;
-    try {
-    String query = "SELECT * FROM product WHERE id=" + id;
-    Connection conn = datasource.getConnection();
-    Statement stat = conn.createStatement();
-    ResultSet rs = stat.executeQuery(query);
-    if (rs.next())
-      product = new Product(rs.getInt(1), 
-                            rs.getString(2), 
-                            rs.getString(3), 
-                            rs.getDouble(4), 
-                            rs.getInt(5), 
-                            rs.getString(6)
-                            );
-    return product;
+    String query = "SELECT * FROM product WHERE id=?";
+
+    try (Connection conn = replica.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setInt(1, id);
+      try (ResultSet rs = stat.executeQuery()) {
+        if (rs.next())
+          product = toProduct(rs);
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
+    return product;
   }
 
   @Override
   public int update(Product product) throws DAOException {
     String query = "UPDATE product SET type=?, name=?, price=?, quantity=?, image=? WHERE id=?";
     int rows = 0;
-    try {
-    Connection conn = datasource.getConnection();
-    PreparedStatement stat = conn.prepareStatement(query);
-    stat.setString(1,product.getType());
-    stat.setString(2,product.getName());
-    stat.setDouble(3, product.getPrice());
-    stat.setInt(4, product.getQuantity());
-    stat.setString(5, product.getImg());
-    stat.setInt(6, product.getId());
-    rows = stat.executeUpdate();
-
-    conn.close();
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        stat.setString(1,product.getType());
+        stat.setString(2,product.getName());
+        stat.setDouble(3, product.getPrice());
+        stat.setInt(4, product.getQuantity());
+        stat.setString(5, product.getImg());
+        stat.setInt(6, product.getId());
+        rows = stat.executeUpdate();
+        // a hot SKU keeps its stock on the stripes
+        if (rows > 0 && shards.isHot(product.getId()))
+          shards.reset(conn, product.getId(), product.getQuantity());
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
@@ -118,14 +137,125 @@ public class ProductDAOMySql implements DAO<Integer, Product> {
 
   @Override
   public int delete(Integer id) throws DAOException {
-    String query = "DELETE FROM product WHERE id=" + id;
+    String query = "DELETE FROM product WHERE id=?";
     int rows = 0;
-    try {
-    Connection conn = datasource.getConnection();
-    Statement stat = conn.createStatement();
-    rows = stat.executeUpdate(query);
 
-    conn.close();
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setInt(1, id);
+      rows = stat.executeUpdate();
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return rows;
+  }
+
+  @Override
+  public List<Product> createAll(List<Product> products) throws DAOException {
+    String query = "INSERT INTO product (type, name, price, quantity, image) VALUES(? ,?, ?, ?, ?)";
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (Product product : products) {
+          stat.setString(1, product.getType());
+          stat.setString(2, product.getName());
+          stat.setDouble(3, product.getPrice());
+          stat.setInt(4, product.getQuantity());
+          stat.setString(5, product.getImg());
+          stat.addBatch();
+        }
+        stat.executeBatch();
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return products;
+  }
+
+  @Override
+  public List<Product> readMany(List<Integer> ids) throws DAOException {
+    List<Product> products = new ArrayList<>();
+    if (ids.isEmpty())
+      return products;
+
+    try (Connection conn = replica.getConnection()) {
+      for (List<Integer> chunk : UtilDAOSql.chunks(ids)) {
+        String query = "SELECT * FROM product WHERE id IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+        try (PreparedStatement stat = conn.prepareStatement(query)) {
+          for (int i = 0; i < chunk.size(); i++)
+            stat.setInt(i + 1, chunk.get(i));
+          try (ResultSet rs = stat.executeQuery()) {
+            while (rs.next())
+              products.add(toProduct(rs));
+          }
+        }
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return products;
+  }
+
+  @Override
+  public int updateAll(List<Product> products) throws DAOException {
+    String query = "UPDATE product SET type=?, name=?, price=?, quantity=?, image=? WHERE id=?";
+    int rows = 0;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement(query)) {
+        for (Product product : products) {
+          stat.setString(1,product.getType());
+          stat.setString(2,product.getName());
+          stat.setDouble(3, product.getPrice());
+          stat.setInt(4, product.getQuantity());
+          stat.setString(5, product.getImg());
+          stat.setInt(6, product.getId());
+          stat.addBatch();
+        }
+        rows = UtilDAOSql.rows(stat.executeBatch());
+        for (Product product : products) {
+          if (shards.isHot(product.getId()))
+            shards.reset(conn, product.getId(), product.getQuantity());
+        }
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    return rows;
+  }
+
+  @Override
+  public int deleteAll(List<Integer> ids) throws DAOException {
+    int rows = 0;
+    if (ids.isEmpty())
+      return rows;
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try {
+        for (List<Integer> chunk : UtilDAOSql.chunks(ids)) {
+          String query = "DELETE FROM product WHERE id IN (" + UtilDAOSql.placeholders(chunk.size()) + ")";
+          try (PreparedStatement stat = conn.prepareStatement(query)) {
+            for (int i = 0; i < chunk.size(); i++)
+              stat.setInt(i + 1, chunk.get(i));
+            rows += stat.executeUpdate();
+          }
+        }
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
@@ -134,20 +264,28 @@ public class ProductDAOMySql implements DAO<Integer, Product> {
 
   public List<String> getTypes() throws DAOException {
     List<String> types = new ArrayList<>();
-
-    try {
-    Connection conn = datasource.getConnection();
     String query = "SELECT DISTINCT name FROM type";
-    Statement stat = conn.createStatement();
-    ResultSet rs = stat.executeQuery(query);
+
+    try (Connection conn = replica.getConnection();
+         Statement stat = conn.createStatement();
+         ResultSet rs = stat.executeQuery(query)) {
       while (rs.next()) {
         types.add(rs.getString(1));
       }
-
-      conn.close();
     } catch (SQLException ex) {
       throw new DAOException("Error in DAO", ex);
     }
-      return types;
+    return types;
+  }
+
+  private Product toProduct(ResultSet rs) throws SQLException {
+    int id = rs.getInt(1);
+    return new Product(id,
+                       rs.getString(2),
+                       rs.getString(3),
+                       rs.getDouble(4),
+                       shards.isHot(id) ? shards.quantity(id) : rs.getInt(5),
+                       rs.getString(6)
+                       );
   }
 }
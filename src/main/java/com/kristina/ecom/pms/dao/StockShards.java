@@ -0,0 +1,359 @@
+package com.kristina.ecom.pms.dao;
+
+import javax.sql.DataSource;
+
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DataSourceFactory;
+import com.kristina.ecom.dao.TrackedConnection;
+import com.kristina.ecom.dao.UncheckedDAOException;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// stock of a hot SKU split over N rows of product_stock_shard, so concurrent reservations lock
+// different rows instead of queueing on the single product row.
+// an in-memory copy of the stripes picks a stripe that looks non-empty and serves the quantity
+// (their sum) to readers. it is only a hint: the conditional update on the stripe row decides,
+// and the copy is reloaded from the table every HOT_SKU_SYNC_SECONDS and whenever it was wrong.
+// it is loaded for every hot SKU at startup, so a caller never waits on a second connection for it.
+// what a transaction takes from or puts on a stripe reaches the copy when it commits.
+// a SKU becomes hot, and goes back, only at startup: migrateAll() moves product.quantity into the
+// stripes of every HOT_SKUS entry that has none, foldRetired() moves the stripes of the others back
+public class StockShards {
+  private static StockShards instance;
+
+  private final DataSource datasource;
+  private final Set<Integer> hot;
+  private final int stripes;
+  private final Map<Integer, AtomicLongArray> slots = new ConcurrentHashMap<>();
+
+  public StockShards(DataSource datasource, Set<Integer> hot, int stripes) {
+    this.datasource = datasource;
+    this.hot = hot;
+    this.stripes = stripes;
+  }
+
+  // HOT_SKUS is a comma separated list of product ids, "base" stands for the base computer
+  public static synchronized StockShards getInstance() {
+    if (instance == null) {
+      Properties props = new Properties();
+      try {
+        props.load(StockShards.class.getClassLoader().getResourceAsStream("db.properties"));
+      } catch (IOException ex) {
+        ex.printStackTrace();
+      }
+
+      Set<Integer> hot = new HashSet<>();
+      for (String sku : props.getProperty("HOT_SKUS", "").split(",")) {
+        sku = sku.trim();
+        if (sku.equalsIgnoreCase("base"))
+          hot.add(baseId());
+        else if (!sku.isEmpty())
+          hot.add(Integer.parseInt(sku));
+      }
+      instance = new StockShards(DataSourceFactory.instance().getDataSource(), hot,
+        Integer.parseInt(props.getProperty("HOT_SKU_STRIPES", "8").trim()));
+      instance.foldRetired();
+      instance.migrateAll();
+      instance.syncAll();
+
+      long seconds = Long.parseLong(props.getProperty("HOT_SKU_SYNC_SECONDS", "5").trim());
+      if (!hot.isEmpty() && seconds > 0) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+          Thread thread = new Thread(r, "stock-shards-sync");
+          thread.setDaemon(true);
+          return thread;
+        });
+        scheduler.scheduleWithFixedDelay(instance::syncAll, seconds, seconds, TimeUnit.SECONDS);
+      }
+    }
+    return instance;
+  }
+
+  public boolean isHot(int pid) {
+    return hot.contains(pid);
+  }
+
+  public Set<Integer> getHot() {
+    return hot;
+  }
+
+  // the stock of a hot SKU, the sum of its stripes as last seen
+  public int quantity(int pid) {
+    AtomicLongArray stripes = slots(pid);
+    long sum = 0;
+    for (int i = 0; i < stripes.length(); i++)
+      sum += stripes.get(i);
+    return (int) sum;
+  }
+
+  // takes quantity from one random stripe that can cover it, or gathers it from several under
+  // a lock on all stripes. false if the product doesn't have that much stock.
+  // runs in the caller's transaction, the in-memory stripes only change once it commits
+  public boolean reserve(Connection conn, int pid, int quantity) throws SQLException {
+    AtomicLongArray stripes = slots(pid);
+    String query = "UPDATE product_stock_shard SET quantity = quantity - ? WHERE pid = ? AND shard = ? AND quantity >= ?";
+    int start = ThreadLocalRandom.current().nextInt(stripes.length());
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      for (int i = 0; i < stripes.length(); i++) {
+        int shard = (start + i) % stripes.length();
+        if (stripes.get(shard) < quantity)
+          continue;
+        stat.setInt(1, quantity);
+        stat.setInt(2, pid);
+        stat.setInt(3, shard);
+        stat.setInt(4, quantity);
+        if (stat.executeUpdate() == 1) {
+          taken(conn, stripes, shard, -quantity);
+          return true;
+        }
+        // somebody else got there first, the stripe is low on committed stock whatever we do
+        stripes.set(shard, 0);
+      }
+    }
+    return gather(conn, pid, quantity, stripes);
+  }
+
+  // puts stock back on a random stripe
+  public void restock(Connection conn, int pid, int quantity) throws SQLException {
+    AtomicLongArray stripes = slots(pid);
+    int shard = ThreadLocalRandom.current().nextInt(stripes.length());
+    String query = "UPDATE product_stock_shard SET quantity = quantity + ? WHERE pid = ? AND shard = ?";
+
+    try (PreparedStatement stat = conn.prepareStatement(query)) {
+      stat.setInt(1, quantity);
+      stat.setInt(2, pid);
+      stat.setInt(3, shard);
+      stat.executeUpdate();
+    }
+    taken(conn, stripes, shard, quantity);
+  }
+
+  // sets the total stock of a hot SKU, spread evenly over the stripes
+  public void reset(Connection conn, int pid, int quantity) throws SQLException {
+    write(conn, pid, quantity);
+    TrackedConnection.afterCommit(conn, () -> {
+      AtomicLongArray split = new AtomicLongArray(stripes);
+      for (int i = 0; i < stripes; i++)
+        split.set(i, share(quantity, i));
+      slots.put(pid, split);
+    }, () -> {});
+  }
+
+  // moves the stripes back into product.quantity, for a SKU that is no longer hot
+  public void fold(int pid) throws DAOException {
+    String query = "UPDATE product SET quantity = quantity + " +
+                   "(SELECT COALESCE(SUM(quantity), 0) FROM product_stock_shard WHERE pid = ?) WHERE id = ?";
+
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement stat = conn.prepareStatement(query);
+           PreparedStatement delete = conn.prepareStatement("DELETE FROM product_stock_shard WHERE pid = ?")) {
+        stat.setInt(1, pid);
+        stat.setInt(2, pid);
+        stat.executeUpdate();
+        delete.setInt(1, pid);
+        delete.executeUpdate();
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+    slots.remove(pid);
+  }
+
+  // moves product.quantity into the stripes of a SKU that has none yet and zeroes it, one transaction
+  public void migrate(int pid) throws DAOException {
+    try (Connection conn = datasource.getConnection()) {
+      conn.setAutoCommit(false);
+      try (PreparedStatement product = conn.prepareStatement("SELECT quantity FROM product WHERE id = ? FOR UPDATE");
+           PreparedStatement striped = conn.prepareStatement("SELECT COUNT(*) FROM product_stock_shard WHERE pid = ?")) {
+        product.setInt(1, pid);
+        try (ResultSet rs = product.executeQuery()) {
+          if (!rs.next())
+            throw new SQLException("HOT_SKUS has " + pid + " but there is no such product");
+          int quantity = rs.getInt(1);
+          striped.setInt(1, pid);
+          try (ResultSet count = striped.executeQuery()) {
+            if (count.next() && count.getInt(1) == 0)
+              write(conn, pid, quantity);
+          }
+        }
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    } catch (SQLException ex) {
+      throw new DAOException("Error in DAO", ex);
+    }
+  }
+
+  // migrates every HOT_SKUS entry, one that can't be moved stays on product.quantity
+  public void migrateAll() {
+    for (Integer pid : new ArrayList<>(hot)) {
+      try {
+        migrate(pid);
+      } catch (DAOException ex) {
+        ex.printStackTrace();
+        hot.remove(pid);
+      }
+    }
+  }
+
+  // folds every SKU that still has stripes but was taken out of HOT_SKUS, its stock would be
+  // stranded there otherwise
+  public void foldRetired() {
+    List<Integer> retired = new ArrayList<>();
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement("SELECT DISTINCT pid FROM product_stock_shard");
+         ResultSet rs = stat.executeQuery()) {
+      while (rs.next()) {
+        if (!hot.contains(rs.getInt(1)))
+          retired.add(rs.getInt(1));
+      }
+    } catch (SQLException ex) {
+      ex.printStackTrace();
+      return;
+    }
+    for (Integer pid : retired) {
+      try {
+        fold(pid);
+      } catch (DAOException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  public void syncAll() {
+    for (Integer pid : hot) {
+      try {
+        slots.put(pid, load(pid));
+      } catch (SQLException ex) {
+        ex.printStackTrace();
+      }
+    }
+  }
+
+  // slow path: lock every stripe of the product and take the quantity from as many as needed
+  private boolean gather(Connection conn, int pid, int quantity, AtomicLongArray stripes) throws SQLException {
+    long[] found = new long[stripes.length()];
+    long sum = 0;
+    try (PreparedStatement stat = conn.prepareStatement("SELECT shard, quantity FROM product_stock_shard WHERE pid = ? ORDER BY shard FOR UPDATE")) {
+      stat.setInt(1, pid);
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next()) {
+          if (rs.getInt(1) < found.length) {
+            found[rs.getInt(1)] = rs.getInt(2);
+            sum += rs.getInt(2);
+          }
+        }
+      }
+    }
+    // the locked rows hold the committed stock, nobody else can have a change pending on them
+    for (int i = 0; i < found.length; i++)
+      stripes.set(i, found[i]);
+    if (sum < quantity)
+      return false;
+
+    long left = quantity;
+    try (PreparedStatement stat = conn.prepareStatement("UPDATE product_stock_shard SET quantity = ? WHERE pid = ? AND shard = ?")) {
+      for (int shard = 0; shard < found.length && left > 0; shard++) {
+        long take = Math.min(left, found[shard]);
+        if (take == 0)
+          continue;
+        stat.setLong(1, found[shard] - take);
+        stat.setInt(2, pid);
+        stat.setInt(3, shard);
+        stat.addBatch();
+        taken(conn, stripes, shard, -take);
+        left -= take;
+      }
+      stat.executeBatch();
+    }
+    return true;
+  }
+
+  // applies a change to a stripe once the transaction of conn commits, a rollback leaves it as it was
+  private void taken(Connection conn, AtomicLongArray stripes, int shard, long delta) throws SQLException {
+    TrackedConnection.afterCommit(conn, () -> stripes.addAndGet(shard, delta), () -> {});
+  }
+
+  // only empty when the startup load failed: reads see 0 and reservations gather under the
+  // caller's own transaction until the next syncAll()
+  private AtomicLongArray slots(int pid) {
+    return slots.computeIfAbsent(pid, id -> new AtomicLongArray(stripes));
+  }
+
+  // reads the stripes, migrate() has created them
+  private AtomicLongArray load(int pid) throws SQLException {
+    AtomicLongArray loaded = new AtomicLongArray(stripes);
+    try (Connection conn = datasource.getConnection();
+         PreparedStatement stat = conn.prepareStatement("SELECT shard, quantity FROM product_stock_shard WHERE pid = ?")) {
+      stat.setInt(1, pid);
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next()) {
+          if (rs.getInt(1) < stripes)
+            loaded.set(rs.getInt(1), rs.getInt(2));
+        }
+      }
+    }
+    return loaded;
+  }
+
+  // replaces the stripes with an even split of quantity and zeroes product.quantity
+  private void write(Connection conn, int pid, int quantity) throws SQLException {
+    try (PreparedStatement delete = conn.prepareStatement("DELETE FROM product_stock_shard WHERE pid = ?");
+         PreparedStatement insert = conn.prepareStatement("INSERT INTO product_stock_shard VALUES(?, ?, ?)");
+         PreparedStatement zero = conn.prepareStatement("UPDATE product SET quantity = 0 WHERE id = ?")) {
+      delete.setInt(1, pid);
+      delete.executeUpdate();
+      for (int i = 0; i < stripes; i++) {
+        insert.setInt(1, pid);
+        insert.setInt(2, i);
+        insert.setInt(3, share(quantity, i));
+        insert.addBatch();
+      }
+      insert.executeBatch();
+      zero.setInt(1, pid);
+      zero.executeUpdate();
+    }
+  }
+
+  // straight from the table, the catalog can't be used here because it reads products through us.
+  // no base computer is a configuration error, not a reason to make product 0 hot
+  private static int baseId() {
+    try (Connection conn = DataSourceFactory.instance().getDataSource().getConnection();
+         PreparedStatement stat = conn.prepareStatement("SELECT id FROM product WHERE type = 'Computer' ORDER BY id LIMIT 1");
+         ResultSet rs = stat.executeQuery()) {
+      if (!rs.next())
+        throw new SQLException("HOT_SKUS has base but there is no base computer");
+      return rs.getInt(1);
+    } catch (SQLException ex) {
+      throw new UncheckedDAOException(new DAOException("Error in DAO", ex));
+    }
+  }
+
+  private int share(int quantity, int shard) {
+    return quantity / stripes + (shard < quantity % stripes ? 1 : 0);
+  }
+}
@@ -0,0 +1,108 @@
+package com.kristina.ecom.pms.domain;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// immutable snapshot of the product table, swapped as a whole by CatalogService.
+// the products are CatalogItems, shared as they are, and the stock is kept next to them.
+// get/getAll still hand out Product copies with the stock as the quantity,
+// quantities are as of loadedAt and are not meant for stock checks
+public final class Catalog {
+  private final Map<Integer, CatalogItem> items;
+  private final Map<Integer, Integer> stock;
+  private final CatalogItem base;
+  private final LocalDateTime loadedAt;
+
+  public Catalog(List<Product> products) {
+    Map<Integer, CatalogItem> items = new HashMap<>();
+    Map<Integer, Integer> stock = new HashMap<>();
+    CatalogItem base = null;
+    for (Product product : products) {
+      CatalogItem item = CatalogItem.of(product);
+      items.put(item.id(), item);
+      stock.put(item.id(), product.getQuantity());
+      if (base == null && "Computer".equals(item.type()))
+        base = item;
+    }
+    this.items = Collections.unmodifiableMap(items);
+    this.stock = Collections.unmodifiableMap(stock);
+    this.base = base;
+    this.loadedAt = LocalDateTime.now();
+  }
+
+  private Catalog(Map<Integer, CatalogItem> items, Map<Integer, Integer> stock, CatalogItem base) {
+    this.items = Collections.unmodifiableMap(items);
+    this.stock = Collections.unmodifiableMap(stock);
+    this.base = base;
+    this.loadedAt = LocalDateTime.now();
+  }
+
+  // the "Computer" product every computer is built on, null if there is none
+  public CatalogItem getBaseItem() {
+    return base;
+  }
+
+  public CatalogItem item(int id) {
+    return items.get(id);
+  }
+
+  public Collection<CatalogItem> items() {
+    return items.values();
+  }
+
+  public int stock(int id) {
+    return stock.getOrDefault(id, 0);
+  }
+
+  public Product getBase() {
+    return base == null ? null : base.line(stock(base.id()));
+  }
+
+  public Product get(int id) {
+    CatalogItem item = items.get(id);
+    return item == null ? null : item.line(stock(id));
+  }
+
+  public boolean contains(int id) {
+    return items.containsKey(id);
+  }
+
+  public List<Product> getAll() {
+    List<Product> all = new ArrayList<>(items.size());
+    for (CatalogItem item : items.values())
+      all.add(item.line(stock(item.id())));
+    return all;
+  }
+
+  public int size() {
+    return items.size();
+  }
+
+  public LocalDateTime getLoadedAt() {
+    return loadedAt;
+  }
+
+  // a new snapshot with one product replaced, this one is left as it is
+  public Catalog with(Product product) {
+    CatalogItem item = CatalogItem.of(product);
+    Map<Integer, CatalogItem> items = new HashMap<>(this.items);
+    Map<Integer, Integer> stock = new HashMap<>(this.stock);
+    items.put(item.id(), item);
+    stock.put(item.id(), product.getQuantity());
+    boolean isBase = base != null ? base.id() == item.id() : "Computer".equals(item.type());
+    return new Catalog(items, stock, isBase ? item : base);
+  }
+
+  public Catalog without(int id) {
+    Map<Integer, CatalogItem> items = new HashMap<>(this.items);
+    Map<Integer, Integer> stock = new HashMap<>(this.stock);
+    items.remove(id);
+    stock.remove(id);
+    return new Catalog(items, stock, base != null && base.id() == id ? null : base);
+  }
+}
@@ -0,0 +1,15 @@
+package com.kristina.ecom.pms.domain;
+
+// one product of the catalog as an immutable value, so the same instance can be handed to
+// every thread, request and cache without copying. how many of it a cart or an order takes
+// is not part of it, line(quantity) makes that line
+public record CatalogItem(int id, String type, String name, double price, String img) {
+  public static CatalogItem of(Product product) {
+    return new CatalogItem(product.getId(), product.getType(), product.getName(), product.getPrice(), product.getImg());
+  }
+
+  // a cart or order line, the only mutable part
+  public Product line(int quantity) {
+    return new Product(id, type, name, price, quantity, img);
+  }
+}
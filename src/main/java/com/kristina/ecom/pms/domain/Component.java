@@ -8,12 +8,20 @@ public class Component extends ComputerDecorator {
     super(computer);
   }
 
+  // adds the product to the flat build instead of wrapping the computer once more,
+  // the build stays one object however many components are added
+  public static ComputerBuild of(Computer computer, Product product) {
+    ComputerBuild build = computer instanceof ComputerBuild ? (ComputerBuild) computer : new ComputerBuild(computer);
+    return build.add(product);
+  }
+
   public Component(Computer computer, Product product) {
     super(computer);
     this.description = product.getName();
     this.price = product.getPrice();
-    if (super.getComponents().contains(product)) {
-      Product p = super.getComponents().get(super.getComponents().indexOf(product));
+    int index = super.getComponents().indexOf(product);
+    if (index >= 0) {
+      Product p = super.getComponents().get(index);
        p.setQuantity(p.getQuantity() + product.getQuantity());
     } else
       super.getComponents().add(product);
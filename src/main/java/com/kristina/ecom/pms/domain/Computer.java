@@ -12,4 +12,6 @@ public interface Computer {
   Product getBase();
   List<Product> getComponents();
   void setComponents(List<Product> components);
+  // recomputes description and price after the components were changed in place
+  void update();
 }
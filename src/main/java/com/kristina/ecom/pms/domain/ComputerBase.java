@@ -1,7 +1,7 @@
 package com.kristina.ecom.pms.domain;
 import java.util.stream.Collectors;
 
-import com.kristina.ecom.pms.service.ProductService;
+import com.kristina.ecom.pms.service.CatalogService;
 
 import java.util.List;
 import java.util.ArrayList;
@@ -18,30 +18,43 @@ public class ComputerBase implements Computer {
     this(new ArrayList<Product>());
   }
 
+  // the base comes from the in-memory catalog, each computer gets its own line of it
   public ComputerBase(List<Product> components) {
-    computer = new ProductService().getComputer();
-    this.id = computer.getId();
-    this.components = components;
-    update();
+    this(CatalogService.getInstance().get().getBaseItem().line(1), components);
   }
 
   // constructor for MongoDB
   public ComputerBase(int id, List<Product> components) {
-    computer = new ProductService().getComputer();
+    this(CatalogService.getInstance().get().getBaseItem().line(1), components);
     this.id = id;
+  }
+
+  // a copy with its own base and components, decorators are flattened the way the cart stores them
+  public ComputerBase(Computer computer) {
+    this(new Product(computer.getBase()),
+      computer.getComponents().stream().map(Product::new).collect(Collectors.toCollection(ArrayList::new)));
+    this.id = computer.getId();
+  }
+
+  public ComputerBase(Product base, List<Product> components) {
+    computer = base;
+    this.id = computer.getId();
     this.components = components;
     update();
   }
 
   // construct the description and price dynamically
+  @Override
   public void update() {
-    description = computer.getName();
+    StringBuilder description = new StringBuilder(computer.getName());
     price = computer.getPrice();
 
     for (Product product : components) {
-      description += (" + " + product.getName()).repeat(product.getQuantity());
+      for (int i = 0; i < product.getQuantity(); i++)
+        description.append(" + ").append(product.getName());
       price += product.getPrice() * product.getQuantity();
     }
+    this.description = description.toString();
   }
 
   @Override
@@ -0,0 +1,154 @@
+package com.kristina.ecom.pms.domain;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.kristina.ecom.pms.service.CatalogService;
+
+// a computer as one flat product id -> line map instead of a chain of decorators.
+// the price is a running total kept by add/remove, so adding a component costs the same
+// however big the build is, and the description is only rendered when somebody reads it
+public class ComputerBuild implements Computer {
+  private int id;
+  private Product base;
+  private Map<Integer, Product> lines = new LinkedHashMap<>();
+  private double price;
+  private String description; // null until rendered, and again after every change
+
+  public ComputerBuild() {
+    this(CatalogService.getInstance().get().getBaseItem().line(1));
+  }
+
+  public ComputerBuild(Product base) {
+    this.base = base;
+    this.id = base.getId();
+    this.price = base.getPrice();
+  }
+
+  // flattens any computer, decorated or not
+  public ComputerBuild(Computer computer) {
+    this(computer.getBase());
+    this.id = computer.getId();
+    for (Product product : computer.getComponents())
+      add(product);
+  }
+
+  public ComputerBuild add(Product product) {
+    return add(product, product.getQuantity());
+  }
+
+  // a negative quantity takes units off, a line that drops to 0 is removed
+  public ComputerBuild add(Product product, int quantity) {
+    Product line = lines.get(product.getId());
+    if (line == null) {
+      line = new Product(product);
+      line.setQuantity(0);
+      lines.put(line.getId(), line);
+    }
+    return change(line, quantity);
+  }
+
+  // straight from the shared catalog entry, nothing is copied once the line exists
+  public ComputerBuild add(CatalogItem item, int quantity) {
+    Product line = lines.get(item.id());
+    if (line == null) {
+      line = item.line(0);
+      lines.put(line.getId(), line);
+    }
+    return change(line, quantity);
+  }
+
+  private ComputerBuild change(Product line, int quantity) {
+    quantity = Math.max(quantity, -line.getQuantity());
+    line.setQuantity(line.getQuantity() + quantity);
+    price += line.getPrice() * quantity;
+    if (line.getQuantity() == 0)
+      lines.remove(line.getId());
+    description = null;
+    return this;
+  }
+
+  public ComputerBuild remove(int productId) {
+    Product line = lines.remove(productId);
+    if (line != null) {
+      price -= line.getPrice() * line.getQuantity();
+      description = null;
+    }
+    return this;
+  }
+
+  public int quantity(int productId) {
+    Product line = lines.get(productId);
+    return line == null ? 0 : line.getQuantity();
+  }
+
+  // product id -> quantity of the components
+  public Map<Integer, Integer> quantities() {
+    return lines.values().stream()
+      .collect(Collectors.toMap(Product::getId, Product::getQuantity, Integer::sum, LinkedHashMap::new));
+  }
+
+  @Override
+  public String getDescription() {
+    if (description == null) {
+      StringBuilder text = new StringBuilder(base.getName());
+      for (Product line : lines.values()) {
+        for (int i = 0; i < line.getQuantity(); i++)
+          text.append(" + ").append(line.getName());
+      }
+      description = text.toString();
+    }
+    return description;
+  }
+
+  @Override
+  public double getPrice() {
+    return price;
+  }
+
+  @Override
+  public int getId() {
+    return id;
+  }
+
+  @Override
+  public Product getBase() {
+    return base;
+  }
+
+  // the lines themselves in a new list: adding to or removing from the list doesn't change
+  // the build (use add/remove), a quantity changed on a line is picked up by update()
+  @Override
+  public List<Product> getComponents() {
+    return new ArrayList<>(lines.values());
+  }
+
+  @Override
+  public void setComponents(List<Product> components) {
+    lines = new LinkedHashMap<>();
+    price = base.getPrice();
+    description = null;
+    for (Product product : components)
+      add(product);
+  }
+
+  @Override
+  public void update() {
+    setComponents(new ArrayList<>(lines.values()));
+  }
+
+  @Override
+  public String toString() {
+    String componentsString = lines.values().stream()
+                                    .map(Product::toString)
+                                    .collect(Collectors.joining(", "));
+
+    return String.format(
+        "\n🖥️ ComputerBuild:\n id: %s\n description: %s\n price: %.2f\n components: [%s]",
+        id, getDescription(), price, componentsString
+    );
+  }
+}
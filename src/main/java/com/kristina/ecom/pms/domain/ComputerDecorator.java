@@ -39,6 +39,11 @@ public class ComputerDecorator implements Computer {
     this.computer.setComponents(components);
   }
 
+  @Override
+  public void update() {
+    this.computer.update();
+  }
+
   @Override
   public String toString() {
     return "ComputerDecorator [computer=" + computer + ", getDescription()=" + getDescription() + ", getPrice()="
@@ -1,6 +1,6 @@
 package com.kristina.ecom.pms.domain;
 
-public class Product implements Cloneable {
+public class Product {
   private int id;
   private String type;
   private String name;
@@ -29,6 +29,10 @@ public class Product implements Cloneable {
     this(id,  "Component", name, price, quantity, " ");
   }
 
+  public Product(Product product) {
+    this(product.id, product.type, product.name, product.price, product.quantity, product.img);
+  }
+
   public Product(int id, String type, String name, double price, int quantity, String img) {
     this.id = id;
     this.type = type;
@@ -101,16 +105,6 @@ public class Product implements Cloneable {
   }  
   
 
-  // @Override
-  // public Product clone() {
-  //   return new Product(this.id, this.name, this.price, this.quantity, this.img);
-  // }
-
-  @Override
-  public Object clone() throws CloneNotSupportedException { // runtime exception, no need to catch 
-    return super.clone();
-  }
-
   @Override 
   public boolean equals(Object obj) {
     if (!(obj instanceof Product))
@@ -124,6 +118,12 @@ public class Product implements Cloneable {
     // at runtime. Instead, you can check against the raw type 
     // or use a wildcard.
   };
+
+  // same key as equals, so products can be looked up in hash maps and sets
+  @Override
+  public int hashCode() {
+    return Integer.hashCode(getId());
+  }
 }
 // == compares if two objects have the same reference in memory
 // the deffault equals uses == if not iverriden
@@ -0,0 +1,100 @@
+package com.kristina.ecom.pms.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import com.kristina.ecom.dao.DAO;
+import com.kristina.ecom.dao.DAOException;
+import com.kristina.ecom.dao.DAOFactory;
+import com.kristina.ecom.pms.domain.Catalog;
+import com.kristina.ecom.pms.domain.Product;
+
+// holds the current Catalog snapshot. readers never block, a refresh builds a new
+// snapshot off to the side and swaps it in with one atomic set
+public class CatalogService {
+  private static CatalogService instance = new CatalogService();
+  private final AtomicReference<Catalog> catalog = new AtomicReference<>();
+  private DAO<Integer, Product> dao;
+  private Properties props;
+  private ScheduledExecutorService scheduler;
+
+  private CatalogService() {
+    dao = DAOFactory.getInstance().create(DAO.Type.PRODUCT_DAO);
+    load("db.properties");
+  }
+
+  public static CatalogService getInstance() {
+    return instance;
+  }
+
+  public Catalog get() {
+    Catalog current = catalog.get();
+    return current != null ? current : start();
+  }
+
+  // full reload from the product table
+  public Catalog refresh() {
+    Catalog before = catalog.get();
+    try (Stream<Product> products = dao.stream()) {
+      Catalog loaded = new Catalog(products.toList());
+      // a write applied while we were scanning wins, the next refresh picks up the rest
+      return catalog.compareAndSet(before, loaded) ? loaded : catalog.get();
+    } catch (DAOException | RuntimeException ex) {
+      ex.printStackTrace();
+    }
+    // keep serving the last good snapshot
+    Catalog current = catalog.get();
+    return current != null ? current : new Catalog(List.of());
+  }
+
+  // apply a single write without rescanning the table
+  public void updated(Product product) {
+    if (catalog.get() == null || product.getId() == 0) {
+      refresh();
+      return;
+    }
+    catalog.updateAndGet(current -> current.with(product));
+  }
+
+  public void deleted(int id) {
+    if (catalog.get() == null) {
+      refresh();
+      return;
+    }
+    catalog.updateAndGet(current -> current.without(id));
+  }
+
+  // first load, then a periodic reload every CATALOG_REFRESH_SECONDS (0 turns it off)
+  private synchronized Catalog start() {
+    if (catalog.get() == null) {
+      Catalog loaded = refresh();
+      if (catalog.get() == null)
+        return loaded;
+    }
+    long seconds = Long.parseLong(props.getProperty("CATALOG_REFRESH_SECONDS", "60").trim());
+    if (scheduler == null && seconds > 0) {
+      scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "catalog-refresh");
+        thread.setDaemon(true);
+        return thread;
+      });
+      scheduler.scheduleWithFixedDelay(this::refresh, seconds, seconds, TimeUnit.SECONDS);
+    }
+    return catalog.get();
+  }
+
+  private void load(String fname) {
+    props = new Properties();
+    try {
+      props.load(getClass().getClassLoader().getResourceAsStream(fname));
+    } catch (IOException ex) {
+      ex.printStackTrace();
+    }
+  }
+}
@@ -2,8 +2,12 @@ package com.kristina.ecom.pms.service;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import com.kristina.ecom.dao.AsyncDAO;
+import com.kristina.ecom.dao.AsyncDAOAdapter;
 import com.kristina.ecom.dao.DAO;
 import com.kristina.ecom.dao.DAOException;
 import com.kristina.ecom.dao.DAOFactory;
@@ -14,21 +18,17 @@ import org.springframework.stereotype.Component;
 @Component
 public class ProductService {
   private DAO<Integer, Product> dao;
+  private AsyncDAO<Integer, Product> async;
 
   public ProductService() {
     dao = DAOFactory.getInstance().create(DAO.Type.PRODUCT_DAO);
+    async = new AsyncDAOAdapter<>(dao);
   }
 
   public List<Product> getAll() {
     List<Product> products = new ArrayList<>();
     try {
-      products = dao.readAll()
-      .stream()
-      .filter(product -> product.getType()
-      .equals("Component"))
-      .collect(Collectors.toList());
-
-
+      products = components(dao);
     } catch (DAOException ex) {
       ex.printStackTrace();
     }
@@ -36,6 +36,24 @@ public class ProductService {
     return products;
   }
 
+  // getAll() on a virtual thread
+  public CompletableFuture<List<Product>> getAllAsync() {
+    return async.supply(ProductService::components)
+      .exceptionally(ex -> {
+        ex.printStackTrace();
+        return new ArrayList<>();
+      });
+  }
+
+  private static List<Product> components(DAO<Integer, Product> dao) throws DAOException {
+    try (Stream<Product> all = dao.stream()) {
+      return all
+      .filter(product -> product.getType()
+      .equals("Component"))
+      .collect(Collectors.toList());
+    }
+  }
+
 
 // Finish this flow 
   public List<String> getTypes() {
@@ -48,19 +66,9 @@ public class ProductService {
     return types;
   }
 
-  // this needs a fix, it shoudn't read from db
+  // served from the catalog snapshot, not the db
   public Product getComputer() {
-    Product product = null;
-    try {
-      product = dao.readAll().stream()
-            .filter(p -> p.getType()
-            .equals("Computer"))
-            .findFirst().orElse(null);
-    } catch (DAOException ex) {
-        ex.printStackTrace();
-    }
-
-    return product;
+    return CatalogService.getInstance().get().getBase();
   }
 
   public Product get(int id) {
@@ -78,6 +86,7 @@ public class ProductService {
     int rows = 0;
     try {
       rows = dao.delete(id);
+      CatalogService.getInstance().deleted(id);
     } catch (DAOException ex) {
       ex.printStackTrace();
     }
@@ -87,6 +96,7 @@ public class ProductService {
   public int create(Product product) {
     try {
       dao.create(product);
+      CatalogService.getInstance().refresh();
     } catch (DAOException ex) {
       ex.printStackTrace();
     }
@@ -97,6 +107,7 @@ public class ProductService {
     int rows = 0;
     try {
       rows = dao.update(product);
+      CatalogService.getInstance().updated(product);
     } catch (DAOException ex) {
       ex.printStackTrace();
     }
@@ -0,0 +1,61 @@
+package com.kristina.ecom.web;
+
+import java.io.IOException;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.kristina.ecom.dao.ReadYourWrites;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// carries the read-your-writes pin between requests: a request that writes gets a cookie with
+// the time its reads stay on the primary, and the requests that bring it back are pinned until then.
+// the worst a forged cookie does is send its own reads to the primary
+@Component
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+  public static final String COOKIE = "ecom-rw";
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    ReadYourWrites.begin(pinnedUntil(request), until -> {
+      // the writes run before the body is written, a committed response just misses the cookie
+      if (!response.isCommitted())
+        response.addCookie(cookie(until));
+    });
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      ReadYourWrites.end();
+    }
+  }
+
+  private static long pinnedUntil(HttpServletRequest request) {
+    if (request.getCookies() == null)
+      return 0;
+    for (Cookie cookie : request.getCookies()) {
+      if (COOKIE.equals(cookie.getName())) {
+        try {
+          // never longer than one window from now, whatever the cookie says
+          return Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis() + ReadYourWrites.getWindow());
+        } catch (NumberFormatException ex) {
+          return 0;
+        }
+      }
+    }
+    return 0;
+  }
+
+  private static Cookie cookie(long until) {
+    Cookie cookie = new Cookie(COOKIE, Long.toString(until));
+    cookie.setPath("/");
+    cookie.setHttpOnly(true);
+    cookie.setMaxAge((int) Math.max(1, (until - System.currentTimeMillis() + 999) / 1000));
+    return cookie;
+  }
+}
@@ -19,7 +19,10 @@ CREATE TABLE if NOT EXISTS porder (
     id char(16) PRIMARY KEY,
     description varchar(512) NOT NULL,
     total float NOT NULL,
-    date_time timestamp NOT NULL
+    date_time timestamp NOT NULL,
+    -- keyset paging of the order listing by date and by total
+    INDEX porder_date_time (date_time, id),
+    INDEX porder_total (total, id)
 );
 
 CREATE TABLE if NOT EXISTS orderDetails (
@@ -31,6 +34,66 @@ CREATE TABLE if NOT EXISTS orderDetails (
     FOREIGN KEY (pid) REFERENCES product(id)
 );
 
+-- orders older than ARCHIVE_AFTER_DAYS, moved out of porder/orderDetails by OrderArchive.
+-- same columns so rows copy over with INSERT ... SELECT *, no foreign keys so products can go
+CREATE TABLE if NOT EXISTS porder_archive (
+    id char(16) PRIMARY KEY,
+    description varchar(512) NOT NULL,
+    total float NOT NULL,
+    date_time timestamp NOT NULL,
+    INDEX porder_archive_date_time (date_time, id),
+    INDEX porder_archive_total (total, id)
+);
+
+CREATE TABLE if NOT EXISTS orderDetails_archive (
+    oid char(16) NOT NULL,
+    pid int NOT NULL,
+    quantity int NOT NULL,
+    PRIMARY KEY(oid, pid)
+);
+
+-- stock of the hot SKUs (HOT_SKUS in db.properties) split into stripes,
+-- product.quantity of those products stays 0 while they are striped
+CREATE TABLE if NOT EXISTS product_stock_shard (
+    pid int NOT NULL,
+    shard int NOT NULL,
+    quantity int NOT NULL,
+    PRIMARY KEY(pid, shard),
+    FOREIGN KEY (pid) REFERENCES product(id) ON DELETE CASCADE
+);
+
+-- sales rollups maintained with every order write (see SalesRollup), rebuilt from
+-- porder/orderDetails and their archives by POST ecom/order/stats/rebuild
+CREATE TABLE if NOT EXISTS sales_daily (
+    day date PRIMARY KEY,
+    orders int NOT NULL,
+    revenue double NOT NULL
+);
+
+CREATE TABLE if NOT EXISTS sales_product (
+    pid int PRIMARY KEY,
+    units int NOT NULL
+);
+
+-- work left for after a checkout commit (see Outbox), deleted by OutboxDispatcher once done.
+-- ukey makes an event unique, e.g. "cart:<id>" so a cart can't be checked out twice
+CREATE TABLE if NOT EXISTS outbox (
+    id bigint AUTO_INCREMENT PRIMARY KEY,
+    type varchar(32) NOT NULL,
+    ukey varchar(64) NULL UNIQUE,
+    payload text NOT NULL,
+    attempts int NOT NULL DEFAULT 0,
+    lease_until timestamp NULL,
+    dead boolean NOT NULL DEFAULT FALSE
+);
+
+-- ORDER_DAO = SHARDED: which shard (index into ORDER_SHARD_URLS) holds each order id hash bucket,
+-- filled with bucket % shards on first start. the shards themselves are created with ecom_shard.sql
+CREATE TABLE if NOT EXISTS order_shard_map (
+    bucket int PRIMARY KEY,
+    shard int NOT NULL
+);
+
 INSERT INTO type VALUES("Computer");
 INSERT INTO type VALUES("Component");
 
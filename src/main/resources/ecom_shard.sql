@@ -0,0 +1,21 @@
+-- one order shard (ORDER_SHARD_URLS). the products live on the main ecom database,
+-- so orderDetails.pid has no foreign key here
+CREATE DATABASE ecom_shard;
+use ecom_shard;
+
+CREATE TABLE if NOT EXISTS porder (
+    id char(16) PRIMARY KEY,
+    description varchar(512) NOT NULL,
+    total float NOT NULL,
+    date_time timestamp NOT NULL,
+    INDEX porder_date_time (date_time, id),
+    INDEX porder_total (total, id)
+);
+
+CREATE TABLE if NOT EXISTS orderDetails (
+    oid char(16) NOT NULL,
+    pid int NOT NULL,
+    quantity int NOT NULL,
+    PRIMARY KEY(oid, pid),
+    FOREIGN KEY (oid) REFERENCES porder(id)
+);
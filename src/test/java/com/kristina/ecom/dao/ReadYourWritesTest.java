@@ -0,0 +1,97 @@
+package com.kristina.ecom.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ReadYourWritesTest {
+
+  @BeforeEach
+  void setUp() {
+    ReadYourWrites.setWindow(5000);
+    ReadYourWrites.end();
+  }
+
+  @AfterEach
+  void tearDown() {
+    ReadYourWrites.setWindow(5000);
+    ReadYourWrites.end();
+  }
+
+  @Test
+  void notPinnedUntilSomethingIsWritten() {
+    assertFalse(ReadYourWrites.isPinned());
+    assertEquals(0, ReadYourWrites.pinnedUntil());
+  }
+
+  @Test
+  void writePinsForTheWindow() {
+    long before = System.currentTimeMillis();
+    ReadYourWrites.wrote();
+
+    assertTrue(ReadYourWrites.isPinned());
+    assertTrue(ReadYourWrites.pinnedUntil() >= before + 5000);
+    assertTrue(ReadYourWrites.pinnedUntil() <= System.currentTimeMillis() + 5000);
+  }
+
+  @Test
+  void pinExpires() throws InterruptedException {
+    ReadYourWrites.setWindow(20);
+    ReadYourWrites.wrote();
+    assertTrue(ReadYourWrites.isPinned());
+
+    Thread.sleep(40);
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void zeroWindowTurnsPinningOff() {
+    ReadYourWrites.setWindow(0);
+    ReadYourWrites.wrote();
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void beginTakesOverALivePinOnly() {
+    ReadYourWrites.begin(System.currentTimeMillis() + 1000, null);
+    assertTrue(ReadYourWrites.isPinned());
+
+    ReadYourWrites.begin(System.currentTimeMillis() - 1, null);
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void listenerHearsNewPins() {
+    AtomicLong heard = new AtomicLong();
+    ReadYourWrites.begin(0, heard::set);
+    ReadYourWrites.wrote();
+    assertEquals(ReadYourWrites.pinnedUntil(), heard.get());
+  }
+
+  @Test
+  void endClearsThePinAndTheListener() {
+    AtomicLong heard = new AtomicLong();
+    ReadYourWrites.begin(0, heard::set);
+    ReadYourWrites.end();
+
+    assertFalse(ReadYourWrites.isPinned());
+    ReadYourWrites.wrote();
+    assertEquals(0, heard.get());
+  }
+
+  @Test
+  void pinStaysOnItsThread() throws InterruptedException {
+    ReadYourWrites.wrote();
+    boolean[] pinned = new boolean[1];
+    Thread other = new Thread(() -> pinned[0] = ReadYourWrites.isPinned());
+    other.start();
+    other.join();
+    assertFalse(pinned[0]);
+  }
+}
@@ -0,0 +1,133 @@
+package com.kristina.ecom.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class TrackedConnectionTest {
+  private boolean autoCommit;
+  private int rows;
+
+  @BeforeEach
+  void setUp() {
+    ReadYourWrites.setWindow(5000);
+    ReadYourWrites.end();
+    autoCommit = true;
+    rows = 1;
+  }
+
+  @AfterEach
+  void tearDown() {
+    ReadYourWrites.end();
+  }
+
+  @Test
+  void readsDoNotPin() throws SQLException {
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.setAutoCommit(false);
+    conn.prepareStatement("SELECT ... FOR UPDATE").executeQuery();
+    conn.commit();
+    conn.close();
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void updateThatChangedNothingDoesNotPin() throws SQLException {
+    rows = 0;
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.prepareStatement("UPDATE ...").executeUpdate();
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void autoCommitWritePinsRightAway() throws SQLException {
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.prepareStatement("UPDATE ...").executeUpdate();
+    assertTrue(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void transactionPinsOnCommitOnly() throws SQLException {
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.setAutoCommit(false);
+    conn.prepareStatement("INSERT ...").executeBatch();
+    assertFalse(ReadYourWrites.isPinned());
+
+    conn.commit();
+    assertTrue(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void rolledBackWriteDoesNotPin() throws SQLException {
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.setAutoCommit(false);
+    conn.prepareStatement("UPDATE ...").executeUpdate();
+    conn.rollback();
+    conn.commit();
+    assertFalse(ReadYourWrites.isPinned());
+  }
+
+  @Test
+  void afterCommitRunsTheMatchingSide() throws SQLException {
+    List<String> ran = new ArrayList<>();
+    Connection conn = TrackedConnection.wrap(fake());
+    conn.setAutoCommit(false);
+
+    TrackedConnection.afterCommit(conn, () -> ran.add("commit 1"), () -> ran.add("rollback 1"));
+    conn.rollback();
+    TrackedConnection.afterCommit(conn, () -> ran.add("commit 2"), () -> ran.add("rollback 2"));
+    conn.commit();
+    TrackedConnection.afterCommit(conn, () -> ran.add("commit 3"), () -> ran.add("rollback 3"));
+    conn.close();
+
+    assertEquals(List.of("rollback 1", "commit 2", "rollback 3"), ran);
+  }
+
+  @Test
+  void afterCommitRunsNowOutsideATransaction() throws SQLException {
+    List<String> ran = new ArrayList<>();
+    TrackedConnection.afterCommit(TrackedConnection.wrap(fake()), () -> ran.add("commit"), () -> ran.add("rollback"));
+    TrackedConnection.afterCommit(fake(), () -> ran.add("untracked"), () -> ran.add("rollback"));
+    assertEquals(List.of("commit", "untracked"), ran);
+  }
+
+  // a connection whose statements report [rows] changed rows
+  private Connection fake() {
+    PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "executeUpdate":
+            return rows;
+          case "executeBatch":
+            return new int[] {rows};
+          default:
+            return null;
+        }
+      });
+    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+      new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "getAutoCommit":
+            return autoCommit;
+          case "setAutoCommit":
+            autoCommit = (Boolean) args[0];
+            return null;
+          case "prepareStatement":
+            return statement;
+          default:
+            return null;
+        }
+      });
+  }
+}
@@ -0,0 +1,57 @@
+package com.kristina.ecom.oms.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.Test;
+
+import com.kristina.ecom.oms.domain.Order;
+import com.kristina.ecom.pms.domain.ComputerBase;
+import com.kristina.ecom.pms.domain.Product;
+
+class OrderDAOShardedTest {
+  private static final LocalDateTime T0 = LocalDateTime.of(2025, 1, 1, 12, 0);
+
+  @Test
+  void shardsAreMergedByDateThenId() {
+    List<Order> shard0 = List.of(order("a", 0), order("d", 2), order("b", 5));
+    List<Order> shard1 = List.of(order("c", 1), order("e", 2), order("f", 3));
+    List<Order> shard2 = List.of(order("a2", 2));
+
+    List<String> ids = new ArrayList<>();
+    OrderDAOSharded.merge(List.of(shard0.iterator(), shard1.iterator(), shard2.iterator()), OrderDAOSharded.BY_DATE)
+      .forEachRemaining(order -> ids.add(order.getId()));
+
+    assertEquals(List.of("a", "c", "a2", "d", "e", "f", "b"), ids);
+  }
+
+  @Test
+  void emptyShardsAreSkipped() {
+    List<Iterator<Integer>> parts = List.of(List.<Integer>of().iterator(), List.of(1, 4).iterator(),
+      List.<Integer>of().iterator(), List.of(2, 3).iterator());
+
+    List<Integer> merged = new ArrayList<>();
+    OrderDAOSharded.merge(parts, Comparator.<Integer>naturalOrder()).forEachRemaining(merged::add);
+
+    assertEquals(List.of(1, 2, 3, 4), merged);
+  }
+
+  @Test
+  void nothingToMerge() {
+    Iterator<Integer> merged = OrderDAOSharded.merge(List.of(), Comparator.<Integer>naturalOrder());
+    assertFalse(merged.hasNext());
+    assertThrows(NoSuchElementException.class, merged::next);
+  }
+
+  private static Order order(String id, int minutes) {
+    return new Order(id, T0.plusMinutes(minutes), new ComputerBase(new Product(1, "base", 100, 1), new ArrayList<>()));
+  }
+}
@@ -0,0 +1,68 @@
+package com.kristina.ecom.oms.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+class OrderQueryTest {
+
+  @Test
+  void dateCursorIsParsedOnce() {
+    OrderQuery query = query(OrderQuery.Sort.DATE, "2025-03-01T10:15:30|abc-1");
+    assertFalse(query.isMalformed());
+    assertEquals(LocalDateTime.of(2025, 3, 1, 10, 15, 30), query.afterDate());
+    assertEquals("abc-1", query.afterId());
+  }
+
+  @Test
+  void totalCursorIsParsedOnce() {
+    OrderQuery query = query(OrderQuery.Sort.TOTAL, "1249.5|abc-1");
+    assertFalse(query.isMalformed());
+    assertEquals(1249.5, query.afterTotal());
+    assertEquals("abc-1", query.afterId());
+  }
+
+  @Test
+  void cursorWithoutABarIsMalformed() {
+    assertTrue(query(OrderQuery.Sort.DATE, "abc").isMalformed());
+    assertTrue(query(OrderQuery.Sort.TOTAL, "abc").isMalformed());
+  }
+
+  @Test
+  void badValueIsMalformed() {
+    assertTrue(query(OrderQuery.Sort.DATE, "2025-13-45|abc-1").isMalformed());
+    assertTrue(query(OrderQuery.Sort.DATE, "|abc-1").isMalformed());
+    assertTrue(query(OrderQuery.Sort.TOTAL, "lots|abc-1").isMalformed());
+    assertTrue(query(OrderQuery.Sort.TOTAL, "NaN|abc-1").isMalformed());
+  }
+
+  @Test
+  void missingIdIsMalformed() {
+    OrderQuery query = query(OrderQuery.Sort.DATE, "2025-03-01T10:15:30|");
+    assertTrue(query.isMalformed());
+    assertNull(query.afterId());
+  }
+
+  @Test
+  void idCursorIsTheId() {
+    OrderQuery query = query(OrderQuery.Sort.ID, "a|b");
+    assertFalse(query.isMalformed());
+    assertEquals("a|b", query.afterId());
+  }
+
+  @Test
+  void noCursorIsFine() {
+    assertFalse(query(OrderQuery.Sort.DATE, null).isMalformed());
+    assertFalse(query(OrderQuery.Sort.TOTAL, "").isMalformed());
+    assertNull(query(OrderQuery.Sort.DATE, "").afterId());
+  }
+
+  private static OrderQuery query(OrderQuery.Sort sort, String after) {
+    return new OrderQuery(null, null, sort, false, after, 10);
+  }
+}
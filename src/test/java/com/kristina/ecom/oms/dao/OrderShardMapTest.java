@@ -0,0 +1,103 @@
+package com.kristina.ecom.oms.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import com.kristina.ecom.dao.DAOException;
+
+class OrderShardMapTest {
+
+  @Test
+  void bucketIsInRangeAndStable() {
+    for (int i = 0; i < 10000; i++) {
+      String id = UUID.randomUUID().toString();
+      int bucket = OrderShardMap.bucketOf(id, 1024);
+      assertTrue(bucket >= 0 && bucket < 1024, id);
+      assertEquals(bucket, OrderShardMap.bucketOf(new String(id), 1024));
+    }
+  }
+
+  @Test
+  void idsSpreadOverTheBuckets() {
+    int[] counts = new int[16];
+    for (int i = 0; i < 16000; i++)
+      counts[OrderShardMap.bucketOf(UUID.randomUUID().toString(), counts.length)]++;
+    for (int count : counts)
+      assertTrue(count > 700 && count < 1300, "bucket with " + count + " of 16000 ids");
+  }
+
+  @Test
+  void shardComesFromTheBucketTable() throws DAOException {
+    Map<Integer, Integer> rows = new TreeMap<>();
+    for (int bucket = 0; bucket < 8; bucket++)
+      rows.put(bucket, (bucket * 3) % 4);
+    OrderShardMap map = new OrderShardMap(table(rows), 4, 8);
+
+    assertEquals(8, map.getBuckets());
+    for (int i = 0; i < 100; i++) {
+      String id = UUID.randomUUID().toString();
+      assertEquals((int) rows.get(OrderShardMap.bucketOf(id, 8)), map.shardOf(id));
+    }
+  }
+
+  @Test
+  void bucketOnAShardThatIsNotConfiguredIsRefused() {
+    OrderShardMap map = new OrderShardMap(table(Map.of(0, 0, 1, 2)), 2, 2);
+    assertThrows(DAOException.class, () -> map.shardOf("any"));
+  }
+
+  @Test
+  void moveToAnUnknownShardIsRefused() {
+    OrderShardMap map = new OrderShardMap(table(Map.of(0, 0)), 2, 1);
+    assertThrows(DAOException.class, () -> map.move(0, 2));
+    assertThrows(DAOException.class, () -> map.move(0, -1));
+  }
+
+  // a datasource whose order_shard_map holds the given bucket -> shard rows
+  private DataSource table(Map<Integer, Integer> rows) {
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {DataSource.class},
+      (proxy, method, args) -> method.getName().equals("getConnection") ? connection(rows) : null);
+  }
+
+  private Connection connection(Map<Integer, Integer> rows) {
+    Statement statement = (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Statement.class},
+      (proxy, method, args) -> method.getName().equals("executeQuery") ? resultSet(rows) : null);
+    return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {Connection.class},
+      (proxy, method, args) -> method.getName().equals("createStatement") ? statement : null);
+  }
+
+  private ResultSet resultSet(Map<Integer, Integer> rows) {
+    Iterator<Map.Entry<Integer, Integer>> it = new ArrayList<>(rows.entrySet()).iterator();
+    List<Map.Entry<Integer, Integer>> current = new ArrayList<>(List.of(Map.entry(-1, -1)));
+    return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {ResultSet.class},
+      (proxy, method, args) -> {
+        switch (method.getName()) {
+          case "next":
+            if (!it.hasNext())
+              return false;
+            current.set(0, it.next());
+            return true;
+          case "getInt":
+            return (Integer) args[0] == 1 ? current.get(0).getKey() : current.get(0).getValue();
+          default:
+            return null;
+        }
+      });
+  }
+}
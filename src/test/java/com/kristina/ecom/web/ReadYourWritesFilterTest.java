@@ -0,0 +1,93 @@
+package com.kristina.ecom.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.kristina.ecom.dao.ReadYourWrites;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+
+class ReadYourWritesFilterTest {
+  private final ReadYourWritesFilter filter = new ReadYourWritesFilter();
+
+  @AfterEach
+  void tearDown() {
+    ReadYourWrites.end();
+  }
+
+  @Test
+  void requestWithoutCookieIsNotPinned() throws Exception {
+    boolean[] pinned = new boolean[1];
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(new MockHttpServletRequest(), response, (req, res) -> pinned[0] = ReadYourWrites.isPinned());
+
+    assertFalse(pinned[0]);
+    assertNull(response.getCookie(ReadYourWritesFilter.COOKIE));
+  }
+
+  @Test
+  void writeSetsTheCookie() throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+
+    filter.doFilter(new MockHttpServletRequest(), response, (req, res) -> ReadYourWrites.wrote());
+
+    Cookie cookie = response.getCookie(ReadYourWritesFilter.COOKIE);
+    assertNotNull(cookie);
+    assertTrue(Long.parseLong(cookie.getValue()) > System.currentTimeMillis());
+    assertTrue(cookie.isHttpOnly());
+    assertEquals("/", cookie.getPath());
+  }
+
+  @Test
+  void cookiePinsTheNextRequest() throws Exception {
+    boolean[] pinned = new boolean[1];
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(System.currentTimeMillis() + 1000)));
+
+    filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> pinned[0] = ReadYourWrites.isPinned());
+
+    assertTrue(pinned[0]);
+  }
+
+  @Test
+  void expiredOrMalformedCookieDoesNotPin() throws Exception {
+    for (String value : new String[] {Long.toString(System.currentTimeMillis() - 1), "not a number"}) {
+      boolean[] pinned = new boolean[1];
+      MockHttpServletRequest request = new MockHttpServletRequest();
+      request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, value));
+
+      filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> pinned[0] = ReadYourWrites.isPinned());
+
+      assertFalse(pinned[0], value);
+    }
+  }
+
+  @Test
+  void forgedCookieIsCappedAtOneWindow() throws Exception {
+    long[] until = new long[1];
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.setCookies(new Cookie(ReadYourWritesFilter.COOKIE, Long.toString(Long.MAX_VALUE)));
+
+    filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> until[0] = ReadYourWrites.pinnedUntil());
+
+    assertTrue(until[0] <= System.currentTimeMillis() + ReadYourWrites.getWindow());
+  }
+
+  @Test
+  void pinDoesNotOutliveTheRequest() throws Exception {
+    FilterChain chain = (req, res) -> ReadYourWrites.wrote();
+    filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), chain);
+
+    assertFalse(ReadYourWrites.isPinned());
+  }
+}